@@ -0,0 +1,14 @@
+package com.example.auth_service.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BatchResult {
+
+    private int index;
+    private Person person;
+    private String error;
+
+}
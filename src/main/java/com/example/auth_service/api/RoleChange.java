@@ -0,0 +1,14 @@
+package com.example.auth_service.api;
+
+import com.example.auth_service.config.Role;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class RoleChange {
+
+    private Long id;
+    private Role role;
+
+}
@@ -0,0 +1,20 @@
+package com.example.auth_service.audit;
+
+/**
+ * Тип события аудита. Порядок констант определяет код в файле, новые типы добавляются только в конец.
+ */
+public enum AuditEvent {
+    LOGIN,
+    LOGIN_FAILED,
+    REFRESH,
+    REFRESH_FAILED,
+    ACCESS_TOKEN,
+    ACCESS_TOKEN_FAILED,
+    REVOKE_ALL;
+
+    private static final AuditEvent[] VALUES = values();
+
+    public static AuditEvent of(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
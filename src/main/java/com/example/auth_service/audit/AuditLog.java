@@ -0,0 +1,185 @@
+package com.example.auth_service.audit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный журнал аудита событий аутентификации.
+ * <p>
+ * Поток запроса только кладет событие в {@link AuditRing}, не выделяя памяти и не выполняя ввода-вывода.
+ * Единственный поток записи забирает события пачками и пишет записи {@link AuditRecord} в сегмент,
+ * отображенный в память. Заполненный сегмент сбрасывается на диск и заменяется новым файлом в
+ * {@code audit.directory}. При переполнении буфера событие отбрасывается со счетчиком
+ * ({@code audit.overflow: drop}) или поток запроса ждет освобождения места ({@code audit.overflow: block}).
+ */
+@Slf4j
+@Component
+public class AuditLog {
+
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AuditRing ring;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean block;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private boolean dirty;
+    private long forcedAt;
+
+    public AuditLog(
+            @Value("${audit.enabled:false}") boolean enabled,
+            @Value("${audit.directory:audit}") String directory,
+            @Value("${audit.segment-size:64MB}") DataSize segmentSize,
+            @Value("${audit.buffer-size:65536}") int bufferSize,
+            @Value("${audit.overflow:drop}") String overflow
+    ) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, segmentSize.toBytes()) / AuditRecord.SIZE * AuditRecord.SIZE;
+        this.ring = new AuditRing(bufferSize);
+        this.block = "block".equals(overflow);
+        if (this.segmentSize < 2 * AuditRecord.SIZE) {
+            throw new IllegalArgumentException("Audit segment size is too small: " + segmentSize);
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        running = true;
+        writer = new Thread(this::writeLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Audit log writing to {}", directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        writer = null;
+    }
+
+    /**
+     * Регистрирует событие. Вызывается из потока запроса.
+     *
+     * @param event - тип события.
+     * @param login - логин пользователя, может быть null.
+     */
+    public void record(AuditEvent event, String login) {
+        if (!enabled) {
+            return;
+        }
+        final long timestamp = System.currentTimeMillis();
+        while (!ring.offer(timestamp, event, login)) {
+            if (!block || !running) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public long written() {
+        return written.sum();
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !ring.isEmpty()) {
+                if (ring.drain(this::write, BATCH_SIZE) == 0) {
+                    forceIfIdle();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            closeSegment();
+        } catch (IOException | UncheckedIOException e) {
+            running = false;
+            log.error("Audit log stopped {}", e.getMessage());
+        }
+    }
+
+    private void write(long timestamp, AuditEvent event, String login) {
+        try {
+            if (segment == null || segment.remaining() < AuditRecord.SIZE) {
+                rotate();
+            }
+            AuditRecord.write(segment, timestamp, event, login);
+            written.increment();
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        final long now = System.currentTimeMillis();
+        final Path file = directory.resolve(String.format("%s%013d-%06d%s",
+                SEGMENT_PREFIX, now, segmentIndex++, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        AuditRecord.writeHeader(segment, now);
+        log.info("Audit segment {} opened", file.getFileName());
+    }
+
+    private void forceIfIdle() {
+        if (dirty && System.nanoTime() - forcedAt > FORCE_INTERVAL_NANOS) {
+            segment.force();
+            dirty = false;
+            forcedAt = System.nanoTime();
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+            dirty = false;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
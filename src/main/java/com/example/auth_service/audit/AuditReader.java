@@ -0,0 +1,74 @@
+package com.example.auth_service.audit;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Утилита для чтения сегментов журнала аудита.
+ * <p>
+ * Запуск: {@code java -cp auth-service.jar com.example.auth_service.audit.AuditReader <каталог или файл>}.
+ * Печатает записи по одной на строку в порядке записи.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class AuditReader {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: AuditReader <audit directory or segment file>");
+            System.exit(2);
+        }
+        read(Paths.get(args[0]), record -> System.out.printf("%s %-19s %016x %s%n",
+                Instant.ofEpochMilli(record.timestamp()), record.event(), record.loginHash(), record.login()));
+    }
+
+    /**
+     * Читает все записи каталога (сегменты по порядку создания) или одного сегмента.
+     */
+    public static void read(Path path, Consumer<AuditRecord> consumer) throws IOException {
+        if (!Files.isDirectory(path)) {
+            readSegment(path, consumer);
+            return;
+        }
+        final List<Path> segments;
+        try (Stream<Path> files = Files.list(path)) {
+            segments = files.filter(file -> {
+                        final String name = file.getFileName().toString();
+                        return name.startsWith(AuditLog.SEGMENT_PREFIX) && name.endsWith(AuditLog.SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+        for (Path segment : segments) {
+            readSegment(segment, consumer);
+        }
+    }
+
+    private static void readSegment(Path segment, Consumer<AuditRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < AuditRecord.SIZE
+                    || buffer.getInt() != AuditRecord.MAGIC || buffer.getInt() != AuditRecord.VERSION) {
+                throw new IOException("Not an audit segment: " + segment);
+            }
+            buffer.position(AuditRecord.SIZE);
+            while (buffer.remaining() >= AuditRecord.SIZE) {
+                final AuditRecord record = AuditRecord.read(buffer);
+                if (record == null) {
+                    return;
+                }
+                consumer.accept(record);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.auth_service.audit;
+
+import com.example.auth_service.service.Hashes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись аудита фиксированного размера {@link #SIZE} байт.
+ * <pre>
+ * 0  long timestamp (epoch millis)
+ * 8  long хэш полного логина
+ * 16 byte код {@link AuditEvent}
+ * 17 byte длина логина в байтах
+ * 18 логин в UTF-8, обрезанный до {@link #MAX_LOGIN_BYTES} байт
+ * </pre>
+ * Первые {@link #SIZE} байт сегмента занимает заголовок: magic, версия формата и время создания.
+ */
+public record AuditRecord(long timestamp, AuditEvent event, long loginHash, String login) {
+
+    public static final int SIZE = 64;
+    static final int MAGIC = 0x41554449;
+    static final int VERSION = 1;
+    static final int MAX_LOGIN_BYTES = SIZE - 18;
+
+    static void writeHeader(ByteBuffer buffer, long createdAt) {
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(createdAt);
+        buffer.position(SIZE);
+    }
+
+    static void write(ByteBuffer buffer, long timestamp, AuditEvent event, String login) {
+        final byte[] bytes = login == null ? new byte[0] : login.getBytes(StandardCharsets.UTF_8);
+        final int length = Math.min(bytes.length, MAX_LOGIN_BYTES);
+        final int start = buffer.position();
+        buffer.putLong(timestamp)
+                .putLong(login == null ? 0 : Hashes.hash(login))
+                .put((byte) event.ordinal())
+                .put((byte) length)
+                .put(bytes, 0, length);
+        buffer.position(start + SIZE);
+    }
+
+    /**
+     * @return запись или null, если на этой позиции записей больше нет.
+     */
+    static AuditRecord read(ByteBuffer buffer) {
+        final int start = buffer.position();
+        final long timestamp = buffer.getLong();
+        if (timestamp == 0) {
+            return null;
+        }
+        final long loginHash = buffer.getLong();
+        final AuditEvent event = AuditEvent.of(buffer.get());
+        final byte[] login = new byte[Math.min(buffer.get() & 0xff, MAX_LOGIN_BYTES)];
+        buffer.get(login);
+        buffer.position(start + SIZE);
+        return new AuditRecord(timestamp, event, loginHash, new String(login, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.auth_service.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ограниченный кольцевой буфер без блокировок: много писателей, один читатель.
+ * <p>
+ * Каждая ячейка имеет порядковый номер. Писатель занимает позицию CAS на хвосте, заполняет ячейку
+ * и публикует ее номером {@code позиция + 1}. Читатель забирает ячейку, когда видит этот номер,
+ * и освобождает ее номером {@code позиция + capacity}. Событие хранится в параллельных массивах,
+ * поэтому запись в буфер ничего не выделяет в куче.
+ */
+class AuditRing {
+
+    @FunctionalInterface
+    interface Handler {
+        void on(long timestamp, AuditEvent event, String login);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final AuditEvent[] events;
+    private final String[] logins;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    AuditRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Audit buffer size must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.timestamps = new long[capacity];
+        this.events = new AuditEvent[capacity];
+        this.logins = new String[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false, если буфер заполнен.
+     */
+    boolean offer(long timestamp, AuditEvent event, String login) {
+        long position;
+        while (true) {
+            position = tail.get();
+            final long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+        final int slot = (int) position & mask;
+        timestamps[slot] = timestamp;
+        events[slot] = event;
+        logins[slot] = login;
+        sequences.lazySet(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Забирает до {@code limit} событий. Вызывается только из одного потока.
+     *
+     * @return число обработанных событий.
+     */
+    int drain(Handler handler, int limit) {
+        int drained = 0;
+        while (drained < limit) {
+            final int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            final String login = logins[slot];
+            logins[slot] = null;
+            handler.on(timestamps[slot], events[slot], login);
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.JwtRequest;
+import com.example.auth_service.api.JwtResponse;
+import com.example.auth_service.api.RefreshJwtRequest;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Конвертер JSON для тел эндпоинтов аутентификации без рефлексии Jackson.
+ * <p>
+ * {@link JwtResponse} пишется одним массивом байт из заранее закодированных имен полей и значений токенов,
+ * {@link JwtRequest} и {@link RefreshJwtRequest} читаются потоковым парсером прямо в объект.
+ * Формат совпадает с тем, что выдает ObjectMapper Spring Boot: поля в порядке объявления, null сохраняется,
+ * неизвестные поля запроса пропускаются.
+ */
+public class AuthJsonConverter extends AbstractHttpMessageConverter<Object> {
+
+    private static final byte[] TYPE = ascii("{\"type\":");
+    private static final byte[] ACCESS_TOKEN = ascii(",\"accessToken\":");
+    private static final byte[] REFRESH_TOKEN = ascii(",\"refreshToken\":");
+    private static final byte[] NULL = ascii("null");
+    private static final int FIXED_LENGTH = TYPE.length + ACCESS_TOKEN.length + REFRESH_TOKEN.length + 1;
+
+    private final JsonFactory jsonFactory;
+
+    public AuthJsonConverter(JsonFactory jsonFactory) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.jsonFactory = jsonFactory;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == JwtResponse.class || clazz == JwtRequest.class || clazz == RefreshJwtRequest.class;
+    }
+
+    /**
+     * Читаются только тела запросов аутентификации.
+     */
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return (clazz == JwtRequest.class || clazz == RefreshJwtRequest.class) && canRead(mediaType);
+    }
+
+    /**
+     * Пишется только ответ с токенами.
+     */
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return clazz == JwtResponse.class && canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(inputMessage.getBody())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new HttpMessageNotReadableException("JSON object expected", inputMessage);
+            }
+            String login = null;
+            String password = null;
+            String refreshToken = null;
+            for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "login" -> login = readString(parser, inputMessage);
+                    case "password" -> password = readString(parser, inputMessage);
+                    case "refreshToken" -> refreshToken = readString(parser, inputMessage);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (clazz == RefreshJwtRequest.class) {
+                final RefreshJwtRequest request = new RefreshJwtRequest();
+                request.setRefreshToken(refreshToken);
+                return request;
+            }
+            if (login == null || password == null) {
+                throw new HttpMessageNotReadableException("login and password are required", inputMessage);
+            }
+            final JwtRequest request = new JwtRequest();
+            request.setLogin(login);
+            request.setPassword(password);
+            return request;
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object value, HttpOutputMessage outputMessage) throws IOException {
+        final JwtResponse response = (JwtResponse) value;
+        final byte[] type = quote(response.getType());
+        final byte[] accessToken = quote(response.getAccessToken());
+        final byte[] refreshToken = quote(response.getRefreshToken());
+        final int length = FIXED_LENGTH + quotedLength(response.getType(), type)
+                + quotedLength(response.getAccessToken(), accessToken)
+                + quotedLength(response.getRefreshToken(), refreshToken);
+        final byte[] body = new byte[length];
+        int position = put(body, 0, TYPE);
+        position = putQuoted(body, position, response.getType(), type);
+        position = put(body, position, ACCESS_TOKEN);
+        position = putQuoted(body, position, response.getAccessToken(), accessToken);
+        position = put(body, position, REFRESH_TOKEN);
+        position = putQuoted(body, position, response.getRefreshToken(), refreshToken);
+        body[position] = '}';
+        outputMessage.getHeaders().setContentLength(length);
+        outputMessage.getBody().write(body);
+    }
+
+    @Override
+    protected MediaType getDefaultContentType(Object value) {
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private static String readString(JsonParser parser, HttpInputMessage inputMessage) throws IOException {
+        final JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new HttpMessageNotReadableException(
+                    "String expected for " + parser.getCurrentName(), inputMessage);
+        }
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Токены состоят из символов base64url и точек и пишутся в тело как есть.
+     *
+     * @return экранированное значение в кавычках, литерал null для null или null, если экранирование не нужно.
+     */
+    private static byte[] quote(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\') {
+                final byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+                final byte[] quoted = new byte[escaped.length + 2];
+                quoted[0] = '"';
+                System.arraycopy(escaped, 0, quoted, 1, escaped.length);
+                quoted[quoted.length - 1] = '"';
+                return quoted;
+            }
+        }
+        return null;
+    }
+
+    private static int quotedLength(String value, byte[] quoted) {
+        return quoted != null ? quoted.length : value.length() + 2;
+    }
+
+    /**
+     * Без экранирования в значении только печатные символы ASCII, поэтому char копируется в байт как есть.
+     */
+    private static int putQuoted(byte[] target, int position, String value, byte[] quoted) {
+        if (quoted != null) {
+            return put(target, position, quoted);
+        }
+        target[position++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            target[position++] = (byte) value.charAt(i);
+        }
+        target[position++] = '"';
+        return position;
+    }
+
+    private static int put(byte[] target, int position, byte[] source) {
+        System.arraycopy(source, 0, target, position, source.length);
+        return position + source.length;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
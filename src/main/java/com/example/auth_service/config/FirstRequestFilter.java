@@ -0,0 +1,54 @@
+package com.example.auth_service.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Пишет в лог задержку первого запроса после старта, чтобы было видно, сколько стоит холодный сервис.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FirstRequestFilter extends GenericFilterBean {
+
+    private final ReadinessGate readinessGate;
+    private final AtomicBoolean first = new AtomicBoolean(true);
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain fc)
+            throws IOException, ServletException {
+        if (!first.get() || !first.compareAndSet(true, false)) {
+            fc.doFilter(request, response);
+            return;
+        }
+        final boolean ready = readinessGate.isReady();
+        final long started = System.nanoTime();
+        try {
+            fc.doFilter(request, response);
+        } finally {
+            log.info("First request {} {} answered {} in {} ms, {} ms after JVM start, ready {}",
+                    ((HttpServletRequest) request).getMethod(),
+                    ((HttpServletRequest) request).getRequestURI(),
+                    ((HttpServletResponse) response).getStatus(),
+                    Duration.ofNanos(System.nanoTime() - started).toMillis(),
+                    ManagementFactory.getRuntimeMXBean().getUptime(),
+                    ready);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.auth_service.config;
 
 import com.example.auth_service.api.Person;
+import com.example.auth_service.jfr.TokenEvent;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -22,6 +23,10 @@ import java.util.Date;
 @Component
 public class JwtProvider {
 
+    private static final String GENERATION_CLAIM = "gen";
+    private static final String ACCESS = "access";
+    private static final String REFRESH = "refresh";
+
     private final SecretKey jwtAccessSecret;
     private final SecretKey jwtRefreshSecret;
 
@@ -37,51 +42,83 @@ public class JwtProvider {
         final LocalDateTime now = LocalDateTime.now();
         final Instant accessExpirationInstant = now.plusMinutes(5).atZone(ZoneId.systemDefault()).toInstant();
         final Date accessExpiration = Date.from(accessExpirationInstant);
-        return Jwts.builder()
+        final TokenEvent event = TokenEvent.start(ACCESS, TokenEvent.ISSUE);
+        final String token = Jwts.builder()
                 .setSubject(user.getEmail())
                 .setExpiration(accessExpiration)
                 .signWith(jwtAccessSecret)
                 .claim("roles", Collections.singleton(user.getRole()))
                 .claim("firstName", user.getFirstName())
                 .compact();
+        event.finish("ok");
+        return token;
     }
 
     public String generateRefreshToken(@NonNull Person user) {
+        final TokenEvent event = TokenEvent.start(REFRESH, TokenEvent.ISSUE);
+        final String token = refreshTokenBuilder(user).compact();
+        event.finish("ok");
+        return token;
+    }
+
+    public String generateRefreshToken(@NonNull Person user, int generation) {
+        final TokenEvent event = TokenEvent.start(REFRESH, TokenEvent.ISSUE);
+        final String token = refreshTokenBuilder(user)
+                .claim(GENERATION_CLAIM, generation)
+                .compact();
+        event.finish("ok");
+        return token;
+    }
+
+    public static int getGeneration(@NonNull Claims claims) {
+        final Integer generation = claims.get(GENERATION_CLAIM, Integer.class);
+        return generation == null ? 0 : generation;
+    }
+
+    private JwtBuilder refreshTokenBuilder(Person user) {
         final LocalDateTime now = LocalDateTime.now();
         final Instant refreshExpirationInstant = now.plusDays(30).atZone(ZoneId.systemDefault()).toInstant();
         final Date refreshExpiration = Date.from(refreshExpirationInstant);
         return Jwts.builder()
                 .setSubject(user.getEmail())
                 .setExpiration(refreshExpiration)
-                .signWith(jwtRefreshSecret)
-                .compact();
+                .signWith(jwtRefreshSecret);
     }
 
     public boolean validateAccessToken(@NonNull String accessToken) {
-        return validateToken(accessToken, jwtAccessSecret);
+        return validateToken(accessToken, jwtAccessSecret, ACCESS);
     }
 
     public boolean validateRefreshToken(@NonNull String refreshToken) {
-        return validateToken(refreshToken, jwtRefreshSecret);
+        return validateToken(refreshToken, jwtRefreshSecret, REFRESH);
     }
 
-    private boolean validateToken(@NonNull String token, @NonNull Key secret) {
+    private boolean validateToken(@NonNull String token, @NonNull Key secret, String tokenType) {
+        final TokenEvent event = TokenEvent.start(tokenType, TokenEvent.VERIFY);
+        String outcome = "invalid";
         try {
             Jwts.parserBuilder()
                     .setSigningKey(secret)
                     .build()
                     .parseClaimsJws(token);
+            outcome = "ok";
             return true;
         } catch (ExpiredJwtException expEx) {
+            outcome = "expired";
             log.error("Token expired", expEx);
         } catch (UnsupportedJwtException unsEx) {
+            outcome = "unsupported";
             log.error("Unsupported jwt", unsEx);
         } catch (MalformedJwtException mjEx) {
+            outcome = "malformed";
             log.error("Malformed jwt", mjEx);
         } catch (SignatureException sEx) {
+            outcome = "signature";
             log.error("Invalid signature", sEx);
         } catch (Exception e) {
             log.error("invalid token", e);
+        } finally {
+            event.finish(outcome);
         }
         return false;
     }
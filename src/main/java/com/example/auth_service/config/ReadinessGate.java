@@ -0,0 +1,42 @@
+package com.example.auth_service.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Признак готовности сервиса принимать трафик.
+ * Компоненты, которым нужен прогрев, удерживают готовность до его завершения.
+ */
+@Slf4j
+@Component
+public class ReadinessGate {
+
+    private final Set<String> holds = ConcurrentHashMap.newKeySet();
+
+    public void hold(String reason) {
+        if (holds.add(reason)) {
+            log.info("Readiness held by {}", reason);
+        }
+    }
+
+    public void release(String reason) {
+        if (holds.remove(reason)) {
+            log.info("Readiness released by {}, pending {}", reason, holds);
+            if (holds.isEmpty()) {
+                log.info("Ready {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return holds.isEmpty();
+    }
+
+    public Set<String> pending() {
+        return Set.copyOf(holds);
+    }
+}
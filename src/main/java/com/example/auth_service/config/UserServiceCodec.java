@@ -0,0 +1,102 @@
+package com.example.auth_service.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ClientCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Согласование двоичного формата Smile вместо JSON в обмене с UserService.
+ * <p>
+ * При {@code api.codec: smile} каждый запрос предлагает Smile в Accept с JSON как запасным вариантом.
+ * Тела запросов кодируются в Smile только после того, как UserService хотя бы раз ответил в Smile,
+ * а ответ 415 на такое тело повторяется в JSON, и дальше тела отправляются только в JSON.
+ */
+@Slf4j
+@Component
+public class UserServiceCodec implements ExchangeFilterFunction {
+
+    public static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final String ACCEPT = SMILE + ", " + MediaType.APPLICATION_JSON_VALUE + ";q=0.9";
+
+    private final boolean enabled;
+    private volatile boolean smileAccepted;
+    private volatile boolean smileRejected;
+
+    public UserServiceCodec(@Value("${api.codec:json}") String codec) {
+        this.enabled = "smile".equals(codec);
+    }
+
+    /**
+     * Регистрирует кодеки Smile рядом со стандартными кодеками JSON.
+     */
+    public void configure(ClientCodecConfigurer configurer) {
+        if (enabled) {
+            configurer.customCodecs().register(new Jackson2SmileEncoder());
+            configurer.customCodecs().register(new Jackson2SmileDecoder());
+        }
+    }
+
+    public boolean isSmileAccepted() {
+        return smileAccepted;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!enabled) {
+            return next.exchange(request);
+        }
+        final boolean body = hasJsonBody(request);
+        final boolean smileBody = body && smileAccepted;
+        return next.exchange(negotiate(request, body, smileBody)).flatMap(response -> {
+            if (smileBody && response.statusCode() == HttpStatus.UNSUPPORTED_MEDIA_TYPE) {
+                log.warn("UserService rejected Smile request body, falling back to JSON");
+                smileAccepted = false;
+                smileRejected = true;
+                return response.releaseBody().then(next.exchange(negotiate(request, true, false)));
+            }
+            if (!smileAccepted && !smileRejected && response.headers().contentType()
+                    .filter(SMILE::isCompatibleWith)
+                    .isPresent()) {
+                log.info("UserService answers in Smile, switching request bodies to Smile");
+                smileAccepted = true;
+            }
+            return Mono.just(response);
+        });
+    }
+
+    /**
+     * Без явного Content-Type WebClient выбрал бы для тела первый подходящий кодек, поэтому формат
+     * тела задается всегда.
+     */
+    private static ClientRequest negotiate(ClientRequest request, boolean body, boolean smileBody) {
+        return ClientRequest.from(request)
+                .headers(headers -> {
+                    headers.set(HttpHeaders.ACCEPT, ACCEPT);
+                    if (body) {
+                        headers.setContentType(smileBody ? SMILE : MediaType.APPLICATION_JSON);
+                    }
+                })
+                .build();
+    }
+
+    private static boolean hasJsonBody(ClientRequest request) {
+        return switch (request.method()) {
+            case POST, PUT, PATCH -> {
+                final MediaType contentType = request.headers().getContentType();
+                yield contentType == null || MediaType.APPLICATION_JSON.isCompatibleWith(contentType);
+            }
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.auth_service.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Балансировка запросов к нескольким экземплярам UserService на стороне клиента.
+ * <p>
+ * {@code api.base.url} может содержать несколько адресов через запятую. Для каждого запроса выбираются два
+ * случайных живых экземпляра и берется тот, у которого меньше незавершенных запросов.
+ * Экземпляр, ответивший ошибкой соединения или 5xx {@code api.lb.failure-threshold} раз подряд,
+ * исключается на {@code api.lb.ejection}. Идемпотентные чтения при сбое сразу повторяются на другом экземпляре.
+ */
+@Slf4j
+@Component
+public class UserServiceLoadBalancer implements ExchangeFilterFunction {
+
+    private final List<Endpoint> endpoints;
+    private final int failureThreshold;
+    private final long ejectionNanos;
+
+    public UserServiceLoadBalancer(
+            @Value("${api.base.url}") String baseUrl,
+            @Value("${api.lb.failure-threshold:3}") int failureThreshold,
+            @Value("${api.lb.ejection:10s}") Duration ejection
+    ) {
+        this.endpoints = Arrays.stream(baseUrl.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> new Endpoint(URI.create(url)))
+                .toList();
+        this.failureThreshold = failureThreshold;
+        this.ejectionNanos = ejection.toNanos();
+    }
+
+    /**
+     * @return первый адрес, от которого WebClient разрешает относительные пути.
+     */
+    public String primaryUrl() {
+        return endpoints.get(0).uri.toString();
+    }
+
+    public List<Endpoint> endpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (endpoints.size() == 1) {
+            return next.exchange(request);
+        }
+        final boolean idempotent = request.method() == HttpMethod.GET || request.method() == HttpMethod.HEAD;
+        return exchange(request, next, new HashSet<>(), idempotent ? endpoints.size() : 1);
+    }
+
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next,
+                                          Set<Endpoint> tried, int attemptsLeft) {
+        return Mono.defer(() -> {
+            final Endpoint endpoint = choose(tried);
+            tried.add(endpoint);
+            final Runnable release = endpoint.acquire();
+            final AtomicBoolean responded = new AtomicBoolean();
+            final ClientRequest routed = ClientRequest.from(request)
+                    .url(endpoint.route(request.url()))
+                    .build();
+            return next.exchange(routed)
+                    .doOnCancel(() -> {
+                        if (!responded.get()) {
+                            release.run();
+                        }
+                    })
+                    .flatMap(response -> {
+                        responded.set(true);
+                        if (!response.statusCode().is5xxServerError()) {
+                            endpoint.succeeded();
+                            return Mono.just(releasingOnBody(response, release));
+                        }
+                        endpoint.failed();
+                        if (attemptsLeft > 1) {
+                            return response.releaseBody()
+                                    .doFinally(signal -> release.run())
+                                    .then(exchange(request, next, tried, attemptsLeft - 1));
+                        }
+                        return Mono.just(releasingOnBody(response, release));
+                    })
+                    .onErrorResume(error -> {
+                        release.run();
+                        endpoint.failed();
+                        log.warn("UserService replica {} failed {}", endpoint.uri, error.getMessage());
+                        return attemptsLeft > 1
+                                ? exchange(request, next, tried, attemptsLeft - 1)
+                                : Mono.error(error);
+                    });
+        });
+    }
+
+    /**
+     * Запрос считается незавершенным, пока тело ответа не прочитано до конца или от него не отказались,
+     * а не только до получения заголовков.
+     */
+    private static ClientResponse releasingOnBody(ClientResponse response, Runnable release) {
+        return ClientResponse.from(response)
+                .body(response.bodyToFlux(DataBuffer.class)
+                        .doOnTerminate(release)
+                        .doOnCancel(release))
+                .build();
+    }
+
+    /**
+     * Выбор из двух случайных экземпляров. Если живых не осталось, берется любой еще не опробованный.
+     */
+    private Endpoint choose(Set<Endpoint> tried) {
+        final long now = System.nanoTime();
+        Endpoint first = null;
+        Endpoint second = null;
+        int candidates = 0;
+        final int offset = ThreadLocalRandom.current().nextInt(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            final Endpoint endpoint = endpoints.get((offset + i) % endpoints.size());
+            if (tried.contains(endpoint) || !endpoint.isHealthy(now)) {
+                continue;
+            }
+            candidates++;
+            if (first == null) {
+                first = endpoint;
+            } else if (ThreadLocalRandom.current().nextInt(candidates - 1) == 0) {
+                second = endpoint;
+            }
+        }
+        if (first == null) {
+            return endpoints.stream()
+                    .filter(endpoint -> !tried.contains(endpoint))
+                    .min((a, b) -> Long.compare(a.ejectedUntilNanos, b.ejectedUntilNanos))
+                    .orElse(endpoints.get(offset));
+        }
+        if (second == null) {
+            return first;
+        }
+        return second.outstanding.get() < first.outstanding.get() ? second : first;
+    }
+
+    private static String basePath(URI uri) {
+        final String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            return "";
+        }
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * Экземпляр UserService и его состояние.
+     */
+    public class Endpoint {
+
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ejectedUntilNanos;
+
+        Endpoint(URI uri) {
+            this.uri = uri;
+        }
+
+        public URI uri() {
+            return uri;
+        }
+
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        public boolean isHealthy(long nowNanos) {
+            return ejectedUntilNanos == 0 || nowNanos - ejectedUntilNanos > 0;
+        }
+
+        /**
+         * Переносит запрос, построенный от первого адреса, на этот экземпляр с заменой базового пути первого адреса
+         * на свой.
+         */
+        URI route(URI url) {
+            final String primaryPath = basePath(endpoints.get(0).uri);
+            String path = url.getRawPath() == null ? "" : url.getRawPath();
+            if (path.equals(primaryPath) || path.startsWith(primaryPath + "/")) {
+                path = path.substring(primaryPath.length());
+            }
+            return UriComponentsBuilder.fromUri(url)
+                    .scheme(uri.getScheme())
+                    .host(uri.getHost())
+                    .port(uri.getPort())
+                    .replacePath(basePath(uri) + path)
+                    .build(true)
+                    .toUri();
+        }
+
+        /**
+         * @return действие, которое ровно один раз завершает начатый запрос к экземпляру.
+         */
+        Runnable acquire() {
+            outstanding.incrementAndGet();
+            final AtomicBoolean released = new AtomicBoolean();
+            return () -> {
+                if (released.compareAndSet(false, true)) {
+                    outstanding.decrementAndGet();
+                }
+            };
+        }
+
+        void succeeded() {
+            consecutiveFailures.set(0);
+            ejectedUntilNanos = 0;
+        }
+
+        void failed() {
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                consecutiveFailures.set(0);
+                ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+                log.warn("UserService replica {} ejected for {} ms", uri, ejectionNanos / 1_000_000);
+            }
+        }
+    }
+}
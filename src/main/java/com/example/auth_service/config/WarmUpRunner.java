@@ -0,0 +1,272 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.JwtRequest;
+import com.example.auth_service.api.JwtResponse;
+import com.example.auth_service.api.Person;
+import com.example.auth_service.api.RefreshJwtRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Прогрев сервиса перед приемом трафика при {@code startup.warm-up.enabled: true}.
+ * <p>
+ * После старта контекста в отдельном потоке подписывает и проверяет токены, прогоняет DTO через конвертеры
+ * сообщений Spring MVC и открывает соединения пула WebClient к UserService, а готовность в {@link ReadinessGate}
+ * удерживает до конца прогрева. При {@code startup.warm-up.exit: true} приложение завершается сразу после прогрева,
+ * что нужно для записи архива AppCDS в Dockerfile.
+ */
+@Slf4j
+@Component
+public class WarmUpRunner {
+
+    static final String READINESS_HOLD = "warm-up";
+    private static final String WARM_UP_LOGIN = "warm-up@localhost";
+    private static final byte[] LOGIN_BODY = ("{\"login\":\"" + WARM_UP_LOGIN + "\",\"password\":\"password\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REFRESH_BODY = "{\"refreshToken\":\"eyJ.warm.up\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final JwtProvider jwtProvider;
+    private final RequestMappingHandlerAdapter handlerAdapter;
+    private final WebClient webClient;
+    private final ReadinessGate readinessGate;
+    private final ApplicationContext applicationContext;
+    private final boolean enabled;
+    private final int iterations;
+    private final int connections;
+    private final Duration connectTimeout;
+    private final boolean exit;
+
+    public WarmUpRunner(
+            JwtProvider jwtProvider,
+            RequestMappingHandlerAdapter handlerAdapter,
+            WebClient webClient,
+            ReadinessGate readinessGate,
+            ApplicationContext applicationContext,
+            @Value("${startup.warm-up.enabled:false}") boolean enabled,
+            @Value("${startup.warm-up.iterations:2000}") int iterations,
+            @Value("${startup.warm-up.connections:8}") int connections,
+            @Value("${startup.warm-up.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${startup.warm-up.exit:false}") boolean exit
+    ) {
+        this.jwtProvider = jwtProvider;
+        this.handlerAdapter = handlerAdapter;
+        this.webClient = webClient;
+        this.readinessGate = readinessGate;
+        this.applicationContext = applicationContext;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.connections = connections;
+        this.connectTimeout = connectTimeout;
+        this.exit = exit;
+    }
+
+    @PostConstruct
+    public void hold() {
+        if (enabled) {
+            readinessGate.hold(READINESS_HOLD);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        final Thread thread = new Thread(() -> {
+            run();
+            if (exit) {
+                log.info("Warm-up finished, exiting as requested by startup.warm-up.exit");
+                System.exit(SpringApplication.exit(applicationContext));
+            }
+        }, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Выполняет прогрев и снимает удержание готовности, даже если этап завершился ошибкой.
+     */
+    public void run() {
+        final long started = System.nanoTime();
+        try {
+            warmUpTokens();
+            warmUpJson();
+            warmUpConnections();
+        } catch (RuntimeException e) {
+            log.warn("Warm-up failed {}", e.getMessage());
+        } finally {
+            readinessGate.release(READINESS_HOLD);
+            log.info("Warm-up took {} ms, {} ms since JVM start",
+                    Duration.ofNanos(System.nanoTime() - started).toMillis(),
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    private void warmUpTokens() {
+        final Person person = dummyPerson();
+        for (int i = 0; i < iterations; i++) {
+            final String accessToken = jwtProvider.generateAccessToken(person);
+            final String refreshToken = jwtProvider.generateRefreshToken(person, i + 1);
+            if (!jwtProvider.validateAccessToken(accessToken) || !jwtProvider.validateRefreshToken(refreshToken)) {
+                throw new IllegalStateException("Warm-up token did not verify");
+            }
+            JwtProvider.getGeneration(jwtProvider.getRefreshClaims(refreshToken));
+            jwtProvider.getAccessClaims(accessToken);
+        }
+    }
+
+    /**
+     * Тела прогоняются через те же конвертеры и в том же порядке выбора, что и в Spring MVC,
+     * поэтому тела аутентификации прогревают {@link AuthJsonConverter}, а пользователи - Jackson.
+     */
+    private void warmUpJson() {
+        final List<HttpMessageConverter<?>> converters = handlerAdapter.getMessageConverters();
+        final Type peopleType = new ParameterizedTypeReference<List<Person>>() {
+        }.getType();
+        final List<Person> people = List.of(dummyPerson(), dummyPerson());
+        final JwtResponse response = new JwtResponse("access", "refresh");
+        try {
+            for (int i = 0; i < iterations; i++) {
+                read(converters, peopleType, write(converters, people, peopleType));
+                read(converters, Person.class, write(converters, people.get(0), Person.class));
+                write(converters, response, JwtResponse.class);
+                read(converters, JwtRequest.class, LOGIN_BODY);
+                read(converters, RefreshJwtRequest.class, REFRESH_BODY);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] write(List<HttpMessageConverter<?>> converters, Object value, Type type) throws IOException {
+        for (HttpMessageConverter<?> converter : converters) {
+            final BufferedOutput output = new BufferedOutput();
+            if (converter instanceof GenericHttpMessageConverter<?> generic) {
+                if (generic.canWrite(type, value.getClass(), MediaType.APPLICATION_JSON)) {
+                    ((GenericHttpMessageConverter<Object>) generic).write(value, type, MediaType.APPLICATION_JSON, output);
+                    return output.body.toByteArray();
+                }
+            } else if (converter.canWrite(value.getClass(), MediaType.APPLICATION_JSON)) {
+                ((HttpMessageConverter<Object>) converter).write(value, MediaType.APPLICATION_JSON, output);
+                return output.body.toByteArray();
+            }
+        }
+        throw new IllegalStateException("No message converter writes " + type.getTypeName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object read(List<HttpMessageConverter<?>> converters, Type type, byte[] body) throws IOException {
+        final Class<?> clazz = ResolvableType.forType(type).resolve(Object.class);
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof GenericHttpMessageConverter<?> generic) {
+                if (generic.canRead(type, null, MediaType.APPLICATION_JSON)) {
+                    return generic.read(type, null, new BufferedInput(body));
+                }
+            } else if (converter.canRead(clazz, MediaType.APPLICATION_JSON)) {
+                return ((HttpMessageConverter<Object>) converter).read((Class<Object>) clazz, new BufferedInput(body));
+            }
+        }
+        throw new IllegalStateException("No message converter reads " + type.getTypeName());
+    }
+
+    /**
+     * Параллельные запросы заставляют пул открыть до {@code startup.warm-up.connections} соединений.
+     * Ответ не важен: несуществующий пользователь дает 404 без повторов.
+     */
+    private void warmUpConnections() {
+        final Long opened = Flux.range(0, connections)
+                .flatMap(i -> webClient.get()
+                        .uri("api/email/{email}", WARM_UP_LOGIN)
+                        .exchange()
+                        .flatMap(response -> response.releaseBody().thenReturn(1))
+                        .timeout(connectTimeout)
+                        .onErrorResume(error -> {
+                            log.warn("Warm-up request to UserService failed {}", error.getMessage());
+                            return Mono.empty();
+                        }), connections)
+                .count()
+                .block();
+        log.info("Warm-up exchanged {} of {} requests with UserService", opened, connections);
+    }
+
+    private static final class BufferedOutput implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static final class BufferedInput implements HttpInputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+
+        private BufferedInput(byte[] body) {
+            this.body = body;
+            this.headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static Person dummyPerson() {
+        final Person person = new Person();
+        person.setId(0L);
+        person.setEmail(WARM_UP_LOGIN);
+        person.setPassword("password");
+        person.setFirstName("Warm");
+        person.setLastName("Up");
+        person.setBirthday(LocalDate.of(2000, 1, 1));
+        person.setRole(Role.USER);
+        return person;
+    }
+}
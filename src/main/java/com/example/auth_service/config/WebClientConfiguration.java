@@ -1,34 +1,51 @@
 package com.example.auth_service.config;
 
+import com.example.auth_service.jfr.DownstreamCallRecorder;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.util.concurrent.TimeUnit;
 
 @Configuration
+@RequiredArgsConstructor
 public class WebClientConfiguration {
 
-    @Value("${api.base.url}")
-    private String baseUrl;
+    private final UserServiceLoadBalancer loadBalancer;
+    private final UserServiceCodec codec;
+    private final DownstreamCallRecorder downstreamCallRecorder;
     @Value("1000")
     private int timeout;
+    @Value("${api.pool.max-connections:100}")
+    private int maxConnections;
+    @Value("${api.pool.max-pending:1000}")
+    private int maxPending;
 
     @Bean
     public WebClient webClientWithTimeout() {
-        final var httpClient = HttpClient.create().option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)
+        final var connectionProvider = ConnectionProvider.builder("user-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxPending)
+                .build();
+        final var httpClient = HttpClient.create(connectionProvider).option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)
                 .doOnConnected(connection -> {
                     connection.addHandlerLast(new ReadTimeoutHandler(timeout, TimeUnit.MILLISECONDS));
                     connection.addHandlerLast(new WriteTimeoutHandler(timeout, TimeUnit.MILLISECONDS));
                 });
 
-        return WebClient.builder().baseUrl(baseUrl)
+        return WebClient.builder().baseUrl(loadBalancer.primaryUrl())
+                .codecs(codec::configure)
+                .filter(codec)
+                .filter(loadBalancer)
+                .filter(downstreamCallRecorder)
                 .clientConnector(new ReactorClientHttpConnector(httpClient)).build();
     }
 }
@@ -1,28 +1,51 @@
 package com.example.auth_service.controller;
 
+import com.example.auth_service.api.BatchResult;
 import com.example.auth_service.api.Person;
+import com.example.auth_service.api.RoleChange;
 import com.example.auth_service.config.JwtAuthentication;
 import com.example.auth_service.config.Role;
 import com.example.auth_service.service.AuthService;
+import com.example.auth_service.service.ETags;
+import com.example.auth_service.service.PasswordVerifier;
+import com.example.auth_service.service.PersonReplica;
 import com.example.auth_service.service.PersonService;
+import com.example.auth_service.service.RequestHedger;
+import com.example.auth_service.service.SerializedResponseCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
 @RequestMapping(path = "/api")
 @RequiredArgsConstructor
 public class Controller {
+    private static final String ALL_KEY = "all";
+
     private final AuthService authService;
 
     private final PersonService personService;
 
+    private final PersonReplica personReplica;
+
+    private final SerializedResponseCache responseCache;
+
+    private final RequestHedger requestHedger;
+
+    private final PasswordVerifier passwordVerifier;
+
     @PreAuthorize("hasAuthority('USER')")
     @GetMapping("hello/user")
     public ResponseEntity<String> helloUser() {
@@ -47,30 +70,70 @@ public class Controller {
     @PreAuthorize("hasAuthority('ADMIN')")
     @PostMapping
     public Person crate(@RequestBody Person request) {
-        return personService.create(request);
+        personService.validateCreate(request);
+        return changed(personReplica.remember(personService.create(passwordVerifier.hashPassword(request))));
+    }
+
+    /**
+     * Контроллер отвечающий за пакетное создание пользователей.
+     * При запросе с Accept: application/x-ndjson результаты отдаются потоком по мере готовности.
+     *
+     * @param requests - передается по http в теле запроса.
+     * @return возвращает результат по каждому пользователю или BadRequest, если хотя бы один не прошел проверку.
+     */
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PostMapping(path = "batch", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<BatchResult> crateAll(@RequestBody List<Person> requests) {
+        personService.validateCreateAll(requests);
+        return personService.createAll(passwordVerifier.hashPasswords(requests))
+                .doOnNext(result -> changed(personReplica.remember(result.getPerson())));
+    }
+
+    /**
+     * Контроллер отвечающий за пакетное обновление ролей пользователей.
+     *
+     * @param changes - передается по http в теле запроса.
+     * @return возвращает результат по каждому изменению или BadRequest, если хотя бы одно не прошло проверку.
+     */
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PutMapping(path = "batch/role", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<BatchResult> updateRoles(@RequestBody List<RoleChange> changes) {
+        return personService.updateRoles(changes)
+                .doOnNext(result -> changed(personReplica.remember(result.getPerson())));
     }
 
     /**
      * Контроллер отвечающий за получения списка всех пользователей.
+     * Ответ кэшируется на короткое время и отдается с ETag.
      *
-     * @return возвращает псписок всех пользователей.
+     * @param ifNoneMatch - ETag ранее полученного списка, необязательный.
+     * @return возвращает псписок всех пользователей или 304, если список не изменился.
      */
     @PreAuthorize("hasAuthority('USER')")
     @GetMapping("/all")
-    public List<Person> findAll() {
-        return personService.getAll();
+    public ResponseEntity<byte[]> findAll(
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return cachedResponse(ALL_KEY, ifNoneMatch, personService::getAll);
     }
 
     /**
      * Контроллер отвечающий за получения пользователя по id.
+     * Ответ кэшируется на короткое время и отдается с ETag версии от UserService, поэтому пользователь
+     * читается из UserService, а не из реплики.
      *
-     * @param id - передается по http в заголовке запроса.
-     * @return возвращает пользователя или если обьек не найден BadRequest.
+     * @param id          - передается по http в заголовке запроса.
+     * @param ifNoneMatch - ETag ранее полученного пользователя, необязательный.
+     * @return возвращает пользователя, 304 если он не изменился, или если обьек не найден BadRequest.
      */
     @PreAuthorize("hasAuthority('USER')")
     @GetMapping("{id}")
-    public Person getBuId(@PathVariable long id) {
-        return personService.getUserById(id);
+    public ResponseEntity<byte[]> getBuId(@PathVariable long id,
+                                          @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return cachedResponse(idKey(id), ifNoneMatch, () -> {
+            final ResponseEntity<Person> response = personService.getVersionedUserById(id);
+            personReplica.remember(response.getBody());
+            return response;
+        });
     }
 
     /**
@@ -82,19 +145,30 @@ public class Controller {
     @PreAuthorize("hasAuthority('ADMIN')")
     @DeleteMapping("{id}")
     public ResponseEntity<String> deleteUser(@PathVariable long id) {
-        return new ResponseEntity<>(personService.removeById(String.valueOf(id)), HttpStatus.OK);
+        final String info = personService.removeById(String.valueOf(id));
+        personReplica.evict(id);
+        responseCache.invalidate(ALL_KEY);
+        responseCache.invalidate(idKey(id));
+        return new ResponseEntity<>(info, HttpStatus.OK);
     }
 
     /**
      * Контроллер отвечающий за обнавление пользователя.
+     * Передаются только измененные поля, версия пользователя проверяется по заголовку If-Match.
      *
-     * @param id - передается по http в теле запроса.
-     * @return возвращает пользователя или если обьек не найден BadRequest.
+     * @param id      - передается по http в теле запроса.
+     * @param ifMatch - ETag ожидаемой версии пользователя, необязательный.
+     * @return возвращает пользователя с новым ETag, PreconditionFailed если пользователь уже изменен,
+     * или если обьек не найден BadRequest.
      */
     @PreAuthorize("hasAuthority('ADMIN')")
     @PutMapping("{id}")
-    public Person update(@PathVariable long id, @RequestBody Person request) {
-        return personService.update(id, request);
+    public ResponseEntity<Person> update(@PathVariable long id, @RequestBody Person request,
+                                         @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        personService.validateUpdate(request);
+        final ResponseEntity<Person> response = personService.patch(id, passwordVerifier.hashPassword(request), ifMatch);
+        changed(personReplica.remember(response.getBody()));
+        return response;
     }
 
     /**
@@ -107,6 +181,56 @@ public class Controller {
     @PreAuthorize("hasAuthority('ADMIN')")
     @PutMapping("{id}/role")
     public Person updateRole(@PathVariable long id, @RequestParam(name = "role") String role) {
-        return personService.updateRole(id, Role.valueOf(role));
+        return changed(personReplica.remember(personService.updateRole(id, Role.valueOf(role))));
+    }
+
+    /**
+     * Контроллер отвечающий за отзыв всех refresh токенов пользователя.
+     *
+     * @param email - передается по http в параметре запроса.
+     * @return возвращает сообщение об отзыве.
+     */
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @DeleteMapping("sessions")
+    public ResponseEntity<String> revokeSessions(@RequestParam(name = "email") String email) {
+        authService.revokeAll(email);
+        return ResponseEntity.ok("Sessions revoked " + email);
+    }
+
+    /**
+     * Контроллер отвечающий за статистику дублирования запросов к UserService.
+     *
+     * @return возвращает по каждой операции число запросов, дублей, побед дублей и текущую задержку дубля.
+     */
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("stats/hedge")
+    public Map<String, RequestHedger.Stats> hedgeStats() {
+        return requestHedger.stats();
+    }
+
+    private ResponseEntity<byte[]> cachedResponse(String key, String ifNoneMatch, Supplier<?> loader) {
+        final SerializedResponseCache.Cached cached = responseCache.get(key, loader);
+        if (ETags.matches(ifNoneMatch, cached.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(cached.etag())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(cached.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(cached.body());
+    }
+
+    private Person changed(Person person) {
+        responseCache.invalidate(ALL_KEY);
+        if (person != null && person.getId() != null) {
+            responseCache.invalidate(idKey(person.getId()));
+        }
+        return person;
+    }
+
+    private static String idKey(long id) {
+        return "id:" + id;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package com.example.auth_service.controller;
+
+import com.example.auth_service.config.ReadinessGate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+public class ReadinessController {
+
+    private final ReadinessGate readinessGate;
+
+    /**
+     * Проба готовности для балансировщика.
+     *
+     * @return 200, если прогрев завершен, иначе 503 со списком незавершенных этапов.
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<String> ready() {
+        if (readinessGate.isReady()) {
+            return ResponseEntity.ok("READY");
+        }
+        return new ResponseEntity<>("WARMING_UP " + readinessGate.pending(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.auth_service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Этап входа или обновления токенов в {@code AuthService}: поиск пользователя, проверка пароля,
+ * проверка и выпуск токенов.
+ */
+@Name("auth_service.AuthPhase")
+@Label("Auth Phase")
+@Description("Phase of login or token refresh")
+@Category({"Auth Service", "Auth"})
+@Enabled(false)
+@StackTrace(false)
+public class AuthPhaseEvent extends Event {
+
+    @Label("Flow")
+    private String flow;
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Success")
+    private boolean success;
+
+    public static AuthPhaseEvent start(String flow, String phase) {
+        final AuthPhaseEvent event = new AuthPhaseEvent();
+        event.flow = flow;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    public void finish(boolean success) {
+        if (shouldCommit()) {
+            this.success = success;
+            commit();
+        }
+    }
+}
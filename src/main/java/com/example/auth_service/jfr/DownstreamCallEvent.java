@@ -0,0 +1,42 @@
+package com.example.auth_service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Один HTTP запрос к UserService от отправки до получения заголовков ответа.
+ * Повторы, переключения на другую реплику и дублирующие запросы дают отдельные события
+ * с возрастающим номером попытки.
+ */
+@Name("auth_service.DownstreamCall")
+@Label("UserService Call")
+@Description("HTTP request to UserService")
+@Category({"Auth Service", "Downstream"})
+@Enabled(false)
+@StackTrace(false)
+public class DownstreamCallEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Status")
+    @Description("HTTP status or 0 when no response was received")
+    int status;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,83 @@
+package com.example.auth_service.jfr;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Фильтр WebClient, записывающий {@link DownstreamCallEvent} на каждый HTTP запрос к UserService.
+ * <p>
+ * Имя операции и счетчик попыток передаются через контекст Reactor методом {@link #traced}, поэтому
+ * повторы {@code retryWhen} одного вызова получают номера 1, 2, 3. Пока событие выключено,
+ * фильтр и {@link #traced} ничего не добавляют к запросу.
+ */
+@Component
+public class DownstreamCallRecorder implements ExchangeFilterFunction {
+
+    private static final String URI_TEMPLATE_ATTRIBUTE = WebClient.class.getName() + ".uriTemplate";
+
+    private static final class Call {
+
+        private final String operation;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private Call(String operation) {
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Помечает вызов именем операции. Применяется через {@code transform} после повторов.
+     */
+    public static <T> Function<Mono<T>, Mono<T>> traced(String operation) {
+        return call -> new DownstreamCallEvent().isEnabled()
+                ? call.contextWrite(context -> context.put(Call.class, new Call(operation)))
+                : call;
+    }
+
+    /**
+     * То же, что {@link #traced(String)}, для потоковых ответов.
+     */
+    public static <T> Function<Flux<T>, Flux<T>> tracedMany(String operation) {
+        return call -> new DownstreamCallEvent().isEnabled()
+                ? call.contextWrite(context -> context.put(Call.class, new Call(operation)))
+                : call;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!new DownstreamCallEvent().isEnabled()) {
+            return next.exchange(request);
+        }
+        return Mono.deferContextual(context -> {
+            final Call call = context.getOrDefault(Call.class, null);
+            final DownstreamCallEvent event = new DownstreamCallEvent();
+            event.operation = call != null ? call.operation : request.method() + " "
+                    + request.attribute(URI_TEMPLATE_ATTRIBUTE).orElse(request.url().getPath());
+            event.attempt = call != null ? call.attempts.incrementAndGet() : 1;
+            event.method = request.method().name();
+            event.endpoint = request.url().getHost() + ":" + request.url().getPort();
+            event.begin();
+            return next.exchange(request)
+                    .doOnNext(response -> event.status = response.rawStatusCode())
+                    .doOnError(error -> event.error = error.getClass().getSimpleName())
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL) {
+                            event.error = "cancelled";
+                        }
+                        if (event.shouldCommit()) {
+                            event.commit();
+                        }
+                    });
+        });
+    }
+}
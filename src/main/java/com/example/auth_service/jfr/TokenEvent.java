@@ -0,0 +1,48 @@
+package com.example.auth_service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Выпуск или проверка JWT токена. Длительность события - время подписи или разбора токена.
+ */
+@Name("auth_service.Token")
+@Label("JWT Token")
+@Description("JWT token issue or verification")
+@Category({"Auth Service", "Tokens"})
+@Enabled(false)
+@StackTrace(false)
+public class TokenEvent extends Event {
+
+    public static final String ISSUE = "issue";
+    public static final String VERIFY = "verify";
+
+    @Label("Token Type")
+    private String tokenType;
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("Outcome")
+    private String outcome;
+
+    public static TokenEvent start(String tokenType, String operation) {
+        final TokenEvent event = new TokenEvent();
+        event.tokenType = tokenType;
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    public void finish(String outcome) {
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
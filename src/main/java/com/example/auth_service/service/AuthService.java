@@ -3,68 +3,180 @@ package com.example.auth_service.service;
 import com.example.auth_service.api.JwtRequest;
 import com.example.auth_service.api.JwtResponse;
 import com.example.auth_service.api.Person;
+import com.example.auth_service.audit.AuditEvent;
+import com.example.auth_service.audit.AuditLog;
 import com.example.auth_service.config.JwtAuthentication;
 import com.example.auth_service.config.JwtProvider;
+import com.example.auth_service.jfr.AuthPhaseEvent;
 import io.jsonwebtoken.Claims;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import javax.security.auth.message.AuthException;
-import java.util.HashMap;
-import java.util.Map;
 
 @Service
-@RequiredArgsConstructor
 public class AuthService {
-    private final PersonService personService;
-    private final Map<String, String> refreshStorage = new HashMap<>();
+    private static final String GENERATION_MODE = "generation";
+    private static final String LOGIN_FLOW = "login";
+    private static final String REFRESH_FLOW = "refresh";
+    private static final String LOOKUP_PHASE = "lookup";
+    private static final String ISSUE_PHASE = "issue";
+
+    private final PersonReplica personReplica;
+    private final RefreshStorage refreshStorage;
+    private final RefreshGenerations refreshGenerations;
     private final JwtProvider jwtProvider;
+    private final AuditLog auditLog;
+    private final PasswordVerifier passwordVerifier;
+    private final String refreshMode;
+
+    public AuthService(
+            PersonReplica personReplica,
+            RefreshStorage refreshStorage,
+            RefreshGenerations refreshGenerations,
+            JwtProvider jwtProvider,
+            AuditLog auditLog,
+            PasswordVerifier passwordVerifier,
+            @Value("${jwt.refresh.mode:stored}") String refreshMode
+    ) {
+        this.personReplica = personReplica;
+        this.refreshStorage = refreshStorage;
+        this.refreshGenerations = refreshGenerations;
+        this.jwtProvider = jwtProvider;
+        this.auditLog = auditLog;
+        this.passwordVerifier = passwordVerifier;
+        this.refreshMode = refreshMode;
+    }
 
     public JwtResponse login(@NonNull JwtRequest authRequest) throws AuthException {
-        final Person person = personService.getUserByEmail(authRequest.getLogin());
-        if (person.getPassword().equals(authRequest.getPassword())) {
+        final Person person;
+        final AuthPhaseEvent lookup = AuthPhaseEvent.start(LOGIN_FLOW, LOOKUP_PHASE);
+        try {
+            person = personReplica.getUserByEmail(authRequest.getLogin());
+            lookup.finish(true);
+        } catch (RuntimeException e) {
+            lookup.finish(false);
+            auditLog.record(AuditEvent.LOGIN_FAILED, authRequest.getLogin());
+            throw e;
+        }
+        final AuthPhaseEvent password = AuthPhaseEvent.start(LOGIN_FLOW, "password");
+        final boolean matches;
+        try {
+            matches = passwordVerifier.matches(person.getEmail(), authRequest.getPassword(), person.getPassword());
+        } catch (RuntimeException e) {
+            password.finish(false);
+            auditLog.record(AuditEvent.LOGIN_FAILED, authRequest.getLogin());
+            throw e;
+        }
+        password.finish(matches);
+        if (matches) {
+            final AuthPhaseEvent issue = AuthPhaseEvent.start(LOGIN_FLOW, ISSUE_PHASE);
             final String accessToken = jwtProvider.generateAccessToken(person);
-            final String refreshToken = jwtProvider.generateRefreshToken(person);
-            refreshStorage.put(person.getEmail(), refreshToken);
+            final String refreshToken = issueRefreshToken(person);
+            issue.finish(true);
+            auditLog.record(AuditEvent.LOGIN, person.getEmail());
             return new JwtResponse(accessToken, refreshToken);
         } else {
+            auditLog.record(AuditEvent.LOGIN_FAILED, authRequest.getLogin());
             throw new AuthException("Неправильный пароль");
         }
     }
 
     public JwtResponse getAccessToken(@NonNull String refreshToken) {
+        String login = null;
         if (jwtProvider.validateRefreshToken(refreshToken)) {
             final Claims claims = jwtProvider.getRefreshClaims(refreshToken);
-            final String login = claims.getSubject();
-            final String saveRefreshToken = refreshStorage.get(login);
-            if (saveRefreshToken != null && saveRefreshToken.equals(refreshToken)) {
-                final Person person = personService.getUserByEmail(login);
+            login = claims.getSubject();
+            if (isCurrent(login, refreshToken, claims)) {
+                final Person person = personReplica.getUserByEmail(login);
                 final String accessToken = jwtProvider.generateAccessToken(person);
+                auditLog.record(AuditEvent.ACCESS_TOKEN, login);
                 return new JwtResponse(accessToken, null);
             }
         }
+        auditLog.record(AuditEvent.ACCESS_TOKEN_FAILED, login);
         return new JwtResponse(null, null);
     }
 
     public JwtResponse refresh(@NonNull String refreshToken) throws AuthException {
-        if (jwtProvider.validateRefreshToken(refreshToken)) {
+        String login = null;
+        final AuthPhaseEvent verify = AuthPhaseEvent.start(REFRESH_FLOW, "verify");
+        final boolean valid = jwtProvider.validateRefreshToken(refreshToken);
+        verify.finish(valid);
+        if (valid) {
             final Claims claims = jwtProvider.getRefreshClaims(refreshToken);
-            final String login = claims.getSubject();
-            final String saveRefreshToken = refreshStorage.get(login);
-            if (saveRefreshToken != null && saveRefreshToken.equals(refreshToken)) {
-                final Person person = personService.getUserByEmail(login);
-                final String accessToken = jwtProvider.generateAccessToken(person);
-                final String newRefreshToken = jwtProvider.generateRefreshToken(person);
-                refreshStorage.put(person.getEmail(), newRefreshToken);
-                return new JwtResponse(accessToken, newRefreshToken);
+            login = claims.getSubject();
+            final AuthPhaseEvent current = AuthPhaseEvent.start(REFRESH_FLOW, "current");
+            final boolean isCurrent = isCurrent(login, refreshToken, claims);
+            current.finish(isCurrent);
+            if (isCurrent) {
+                final AuthPhaseEvent lookup = AuthPhaseEvent.start(REFRESH_FLOW, LOOKUP_PHASE);
+                final Person person = personReplica.getUserByEmail(login);
+                lookup.finish(true);
+                final AuthPhaseEvent issue = AuthPhaseEvent.start(REFRESH_FLOW, ISSUE_PHASE);
+                final String newRefreshToken = rotateRefreshToken(person, claims);
+                if (newRefreshToken != null) {
+                    final String accessToken = jwtProvider.generateAccessToken(person);
+                    issue.finish(true);
+                    auditLog.record(AuditEvent.REFRESH, login);
+                    return new JwtResponse(accessToken, newRefreshToken);
+                }
+                issue.finish(false);
             }
         }
+        auditLog.record(AuditEvent.REFRESH_FAILED, login);
         throw new AuthException("Невалидный JWT токен");
     }
 
+    /**
+     * Отзывает все refresh токены пользователя.
+     *
+     * @param login - email пользователя.
+     */
+    public void revokeAll(@NonNull String login) {
+        if (isGenerationMode()) {
+            refreshGenerations.revoke(RefreshGenerations.keyOf(login));
+        } else {
+            refreshStorage.remove(login);
+        }
+        auditLog.record(AuditEvent.REVOKE_ALL, login);
+    }
+
     public JwtAuthentication getAuthInfo() {
         return (JwtAuthentication) SecurityContextHolder.getContext().getAuthentication();
     }
-}
\ No newline at end of file
+
+    private String issueRefreshToken(Person person) {
+        if (isGenerationMode()) {
+            final int generation = refreshGenerations.advance(RefreshGenerations.keyOf(person.getEmail()));
+            return jwtProvider.generateRefreshToken(person, generation);
+        }
+        final String refreshToken = jwtProvider.generateRefreshToken(person);
+        refreshStorage.put(person.getEmail(), refreshToken);
+        return refreshToken;
+    }
+
+    private String rotateRefreshToken(Person person, Claims claims) {
+        if (isGenerationMode()) {
+            final int generation = refreshGenerations.advance(
+                    RefreshGenerations.keyOf(person.getEmail()), JwtProvider.getGeneration(claims));
+            return generation == 0 ? null : jwtProvider.generateRefreshToken(person, generation);
+        }
+        return issueRefreshToken(person);
+    }
+
+    private boolean isCurrent(String login, String refreshToken, Claims claims) {
+        if (isGenerationMode()) {
+            final int generation = JwtProvider.getGeneration(claims);
+            return generation != 0 && generation == refreshGenerations.get(RefreshGenerations.keyOf(login));
+        }
+        final String saveRefreshToken = refreshStorage.get(login);
+        return saveRefreshToken != null && saveRefreshToken.equals(refreshToken);
+    }
+
+    private boolean isGenerationMode() {
+        return GENERATION_MODE.equals(refreshMode);
+    }
+}
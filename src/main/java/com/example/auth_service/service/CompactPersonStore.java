@@ -0,0 +1,510 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.Role;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Компактное хранилище пользователей вне кучи.
+ * <p>
+ * Каждая запись упакована в байты и дописывается в direct-буферы (слэбы) фиксированного размера:
+ * <pre>
+ * int length | long hash | long id | int birthday (epoch day) | byte role (ordinal)
+ * | email | password | firstName | lastName   (каждая строка: short длина UTF-8, затем байты)
+ * </pre>
+ * Индексы по email и по id - таблицы с открытой адресацией и линейным пробированием в {@code long[]}:
+ * младшие 40 бит ячейки - смещение записи + 1, старшие 24 бита - отпечаток хэша ключа.
+ * Объект {@link Person} собирается только при чтении, а {@link #contentHash(long)} читается из заголовка.
+ * Замененные и удаленные записи остаются в слэбах как мусор ({@link #garbageBytes()}). Когда мусор
+ * превышает живые данные и занимает хотя бы один слэб, живые записи копируются в новые слэбы,
+ * а старые освобождаются, поэтому память ограничена примерно удвоенным объемом живых записей.
+ */
+public class CompactPersonStore implements PersonStore {
+
+    public static final int DEFAULT_SLAB_SIZE = 1 << 24;
+
+    private static final int HASH = 4;
+    private static final int ID = HASH + 8;
+    private static final int BIRTHDAY = ID + 8;
+    private static final int ROLE = BIRTHDAY + 4;
+    private static final int EMAIL = ROLE + 1;
+    private static final int NULL_LENGTH = -1;
+    private static final int NO_BIRTHDAY = Integer.MIN_VALUE;
+    private static final long NO_ID = Long.MIN_VALUE;
+    private static final long ADDRESS_MASK = (1L << 40) - 1;
+    private static final Role[] ROLES = Role.values();
+
+    private List<ByteBuffer> slabs = new ArrayList<>();
+    private final StampedLock lock = new StampedLock();
+    private final int slabShift;
+    private final int slabSize;
+    private long[] emailSlots = new long[16];
+    private long[] idSlots = new long[16];
+    private int size;
+    private long writeOffset;
+    private long garbageBytes;
+
+    public CompactPersonStore() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize - размер одного слэба в байтах, степень двойки.
+     */
+    public CompactPersonStore(int slabSize) {
+        if (Integer.bitCount(slabSize) != 1) {
+            throw new IllegalArgumentException("Slab size must be a power of two " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.slabShift = Integer.numberOfTrailingZeros(slabSize);
+    }
+
+    @Override
+    public Person findByEmail(String email) {
+        byte[] key = email.getBytes(StandardCharsets.UTF_8);
+        long hash = Hashes.hash(key);
+        long stamp = lock.readLock();
+        try {
+            int slot = findEmail(key, hash);
+            return slot < 0 ? null : decode(address(emailSlots[slot]));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Person findById(long id) {
+        long stamp = lock.readLock();
+        try {
+            int slot = findId(id);
+            return slot < 0 ? null : decode(address(idSlots[slot]));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void put(Person person) {
+        Objects.requireNonNull(person.getId(), "id");
+        byte[] email = person.getEmail().getBytes(StandardCharsets.UTF_8);
+        byte[] password = utf8(person.getPassword());
+        byte[] firstName = utf8(person.getFirstName());
+        byte[] lastName = utf8(person.getLastName());
+        long id = person.getId();
+        long emailHash = Hashes.hash(email);
+        long contentHash = Hashes.hash(person);
+        long stamp = lock.writeLock();
+        try {
+            long address = append(person, contentHash, email, password, firstName, lastName);
+            int sameEmail = findEmail(email, emailHash);
+            if (sameEmail >= 0 && readId(address(emailSlots[sameEmail])) != id) {
+                removeLocked(readId(address(emailSlots[sameEmail])));
+            }
+            int idSlot = findId(id);
+            if (idSlot >= 0) {
+                long previous = address(idSlots[idSlot]);
+                garbageBytes += length(previous);
+                idSlots[idSlot] = pack(Hashes.mix(id), address);
+                int emailSlot = findEmail(email, emailHash);
+                if (emailSlot >= 0) {
+                    emailSlots[emailSlot] = pack(emailHash, address);
+                } else {
+                    deleteSlot(emailSlots, findEmailAt(previous), true);
+                    insert(emailSlots, emailHash, address);
+                }
+            } else {
+                if ((size + 1) * 2 > idSlots.length) {
+                    resize();
+                }
+                insert(idSlots, Hashes.mix(id), address);
+                insert(emailSlots, emailHash, address);
+                size++;
+            }
+            compactIfNeeded();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Long contentHash(long id) {
+        long stamp = lock.readLock();
+        try {
+            int slot = findId(id);
+            if (slot < 0) {
+                return null;
+            }
+            long address = address(idSlots[slot]);
+            return slab(address).getLong(position(address) + HASH);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            removeLocked(id);
+            compactIfNeeded();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long[] ids() {
+        long stamp = lock.readLock();
+        try {
+            long[] ids = new long[size];
+            int i = 0;
+            for (long slot : idSlots) {
+                if (slot != 0) {
+                    ids[i++] = readId(address(slot));
+                }
+            }
+            return ids;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return байты, занятые слэбами и индексами.
+     */
+    public long footprintBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (long) slabs.size() * slabSize + 8L * (emailSlots.length + idSlots.length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return байты записей, которые были заменены или удалены.
+     */
+    public long garbageBytes() {
+        long stamp = lock.readLock();
+        try {
+            return garbageBytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Переносит живые записи в новые слэбы и освобождает старые.
+     */
+    public void compact() {
+        long stamp = lock.writeLock();
+        try {
+            compactLocked();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (garbageBytes >= slabSize && garbageBytes * 2 > writeOffset) {
+            compactLocked();
+        }
+    }
+
+    /**
+     * Ячейки индекса по id остаются на своих местах, меняется только адрес записи,
+     * индекс по email строится заново по новым адресам.
+     */
+    private void compactLocked() {
+        List<ByteBuffer> previous = slabs;
+        slabs = new ArrayList<>();
+        writeOffset = 0;
+        for (int slot = 0; slot < idSlots.length; slot++) {
+            long value = idSlots[slot];
+            if (value != 0) {
+                long from = address(value);
+                ByteBuffer source = previous.get((int) (from >>> slabShift));
+                int sourcePosition = position(from);
+                int length = source.getInt(sourcePosition);
+                long to = allocate(length);
+                slab(to).put(position(to), source, sourcePosition, length);
+                idSlots[slot] = fingerprint(value) | (to + 1);
+            }
+        }
+        emailSlots = new long[emailSlots.length];
+        for (long value : idSlots) {
+            if (value != 0) {
+                long address = address(value);
+                insert(emailSlots, emailHashAt(address), address);
+            }
+        }
+        garbageBytes = 0;
+    }
+
+    private void removeLocked(long id) {
+        int idSlot = findId(id);
+        if (idSlot < 0) {
+            return;
+        }
+        long address = address(idSlots[idSlot]);
+        deleteSlot(emailSlots, findEmailAt(address), true);
+        deleteSlot(idSlots, idSlot, false);
+        garbageBytes += length(address);
+        size--;
+    }
+
+    private long append(Person person, long contentHash,
+                        byte[] email, byte[] password, byte[] firstName, byte[] lastName) {
+        int length = EMAIL + 2 + email.length + 2 * 3 + len(password) + len(firstName) + len(lastName);
+        if (length > slabSize) {
+            throw new IllegalArgumentException("Person record does not fit into slab " + length);
+        }
+        long address = allocate(length);
+        ByteBuffer slab = slab(address);
+        int position = position(address);
+        slab.putInt(position, length);
+        slab.putLong(position + HASH, contentHash);
+        slab.putLong(position + ID, person.getId() == null ? NO_ID : person.getId());
+        slab.putInt(position + BIRTHDAY,
+                person.getBirthday() == null ? NO_BIRTHDAY : (int) person.getBirthday().toEpochDay());
+        slab.put(position + ROLE, person.getRole() == null ? -1 : (byte) person.getRole().ordinal());
+        int cursor = position + EMAIL;
+        cursor = putString(slab, cursor, email);
+        cursor = putString(slab, cursor, password);
+        cursor = putString(slab, cursor, firstName);
+        putString(slab, cursor, lastName);
+        return address;
+    }
+
+    /**
+     * Резервирует место под запись в текущем слэбе или в новом, если в текущем не хватает места.
+     */
+    private long allocate(int length) {
+        int slabIndex = (int) (writeOffset >>> slabShift);
+        int position = (int) (writeOffset & (slabSize - 1));
+        if (slabIndex == slabs.size() || position + length > slabSize) {
+            if (slabIndex < slabs.size()) {
+                slabIndex++;
+            }
+            position = 0;
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+        }
+        long address = ((long) slabIndex << slabShift) + position;
+        if (address + length > ADDRESS_MASK) {
+            throw new IllegalStateException("Compact person store is full");
+        }
+        writeOffset = address + length;
+        return address;
+    }
+
+    private Person decode(long address) {
+        ByteBuffer slab = slab(address);
+        int position = position(address);
+        Person person = new Person();
+        long id = slab.getLong(position + ID);
+        person.setId(id == NO_ID ? null : id);
+        int birthday = slab.getInt(position + BIRTHDAY);
+        person.setBirthday(birthday == NO_BIRTHDAY ? null : LocalDate.ofEpochDay(birthday));
+        byte role = slab.get(position + ROLE);
+        person.setRole(role < 0 ? null : ROLES[role]);
+        int cursor = position + EMAIL;
+        person.setEmail(getString(slab, cursor));
+        cursor += 2 + Math.max(slab.getShort(cursor), 0);
+        person.setPassword(getString(slab, cursor));
+        cursor += 2 + Math.max(slab.getShort(cursor), 0);
+        person.setFirstName(getString(slab, cursor));
+        cursor += 2 + Math.max(slab.getShort(cursor), 0);
+        person.setLastName(getString(slab, cursor));
+        return person;
+    }
+
+    private int findEmail(byte[] key, long hash) {
+        int mask = emailSlots.length - 1;
+        long fingerprint = fingerprint(hash);
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long value = emailSlots[slot];
+            if (value == 0) {
+                return -1;
+            }
+            if ((value & ~ADDRESS_MASK) == fingerprint && emailEquals(address(value), key)) {
+                return slot;
+            }
+        }
+    }
+
+    private int findEmailAt(long address) {
+        int mask = emailSlots.length - 1;
+        for (int slot = (int) emailHashAt(address) & mask; ; slot = (slot + 1) & mask) {
+            long value = emailSlots[slot];
+            if (value == 0) {
+                return -1;
+            }
+            if (address(value) == address) {
+                return slot;
+            }
+        }
+    }
+
+    private int findId(long id) {
+        int mask = idSlots.length - 1;
+        long hash = Hashes.mix(id);
+        long fingerprint = fingerprint(hash);
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long value = idSlots[slot];
+            if (value == 0) {
+                return -1;
+            }
+            if ((value & ~ADDRESS_MASK) == fingerprint && readId(address(value)) == id) {
+                return slot;
+            }
+        }
+    }
+
+    private static void insert(long[] table, long hash, long address) {
+        int mask = table.length - 1;
+        int slot = (int) hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = pack(hash, address);
+    }
+
+    /**
+     * Удаление из таблицы с линейным пробированием со сдвигом хвоста цепочки, без надгробий.
+     */
+    private void deleteSlot(long[] table, int slot, boolean emailTable) {
+        if (slot < 0) {
+            return;
+        }
+        int mask = table.length - 1;
+        int hole = slot;
+        table[hole] = 0;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            long address = address(table[next]);
+            int home = (int) (emailTable ? emailHashAt(address) : Hashes.mix(readId(address))) & mask;
+            boolean movable = hole <= next
+                    ? home <= hole || home > next
+                    : home <= hole && home > next;
+            if (movable) {
+                table[hole] = table[next];
+                table[next] = 0;
+                hole = next;
+            }
+        }
+    }
+
+    private void resize() {
+        long[] oldIds = idSlots;
+        emailSlots = new long[oldIds.length * 2];
+        idSlots = new long[oldIds.length * 2];
+        for (long value : oldIds) {
+            if (value != 0) {
+                long address = address(value);
+                insert(idSlots, Hashes.mix(readId(address)), address);
+                insert(emailSlots, emailHashAt(address), address);
+            }
+        }
+    }
+
+    private boolean emailEquals(long address, byte[] key) {
+        ByteBuffer slab = slab(address);
+        int cursor = position(address) + EMAIL;
+        if (slab.getShort(cursor) != key.length) {
+            return false;
+        }
+        cursor += 2;
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(cursor + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long emailHashAt(long address) {
+        ByteBuffer slab = slab(address);
+        int cursor = position(address) + EMAIL;
+        int length = slab.getShort(cursor);
+        long hash = Hashes.FNV_OFFSET;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (slab.get(cursor + 2 + i) & 0xff)) * Hashes.FNV_PRIME;
+        }
+        return Hashes.mix(hash);
+    }
+
+    private long readId(long address) {
+        return slab(address).getLong(position(address) + ID);
+    }
+
+    private int length(long address) {
+        return slab(address).getInt(position(address));
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs.get((int) (address >>> slabShift));
+    }
+
+    private int position(long address) {
+        return (int) (address & (slabSize - 1));
+    }
+
+    private static long fingerprint(long hash) {
+        return hash & ~ADDRESS_MASK;
+    }
+
+    private static long pack(long hash, long address) {
+        return fingerprint(hash) | (address + 1);
+    }
+
+    private static long address(long slot) {
+        return (slot & ADDRESS_MASK) - 1;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int len(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static int putString(ByteBuffer slab, int cursor, byte[] value) {
+        if (value == null) {
+            slab.putShort(cursor, (short) NULL_LENGTH);
+            return cursor + 2;
+        }
+        if (value.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Person field is too long " + value.length);
+        }
+        slab.putShort(cursor, (short) value.length);
+        slab.put(cursor + 2, value);
+        return cursor + 2 + value.length;
+    }
+
+    private static String getString(ByteBuffer slab, int cursor) {
+        int length = slab.getShort(cursor);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        slab.get(cursor + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
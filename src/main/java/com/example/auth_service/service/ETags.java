@@ -0,0 +1,48 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Валидаторы версии пользователя для заголовков ETag, If-Match и If-None-Match.
+ * Версией пользователя служит ETag от UserService, а если он его не выдает - хэш содержимого записи
+ * {@link Hashes#hash(Person)}, который считается без повторной сериализации.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ETags {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    public static String of(Person person) {
+        return quote(Hashes.hash(person));
+    }
+
+    public static String of(byte[] body) {
+        return quote(Hashes.hash(body));
+    }
+
+    /**
+     * Проверяет значение заголовка If-Match или If-None-Match: {@code *} или список ETag через запятую.
+     */
+    public static boolean matches(String header, String etag) {
+        if (header == null || etag == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || strip(value).equals(strip(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String strip(String etag) {
+        return etag.startsWith(WEAK_PREFIX) ? etag.substring(WEAK_PREFIX.length()) : etag;
+    }
+
+    private static String quote(long hash) {
+        return '"' + Long.toHexString(hash) + '"';
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * 64-битные хэши для таблиц с открытой адресацией.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Hashes {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    public static long hash(byte[] key) {
+        long hash = FNV_OFFSET;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    public static long hash(CharSequence key) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Хэш всех полей пользователя, по которому реплика находит изменившиеся записи без их разбора.
+     */
+    public static long hash(Person person) {
+        long hash = FNV_OFFSET;
+        hash = combine(hash, person.getId() == null ? 0 : mix(person.getId()));
+        hash = combine(hash, person.getEmail() == null ? 0 : hash(person.getEmail()));
+        hash = combine(hash, person.getPassword() == null ? 0 : hash(person.getPassword()));
+        hash = combine(hash, person.getFirstName() == null ? 0 : hash(person.getFirstName()));
+        hash = combine(hash, person.getLastName() == null ? 0 : hash(person.getLastName()));
+        hash = combine(hash, person.getBirthday() == null ? 0 : mix(person.getBirthday().toEpochDay() + 1));
+        hash = combine(hash, person.getRole() == null ? 0 : person.getRole().ordinal() + 1);
+        return mix(hash);
+    }
+
+    /**
+     * Финальное перемешивание из MurmurHash3, чтобы младшие биты годились для индекса ячейки.
+     */
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long combine(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище пользователей на обычных {@link ConcurrentHashMap}.
+ */
+public class HeapPersonStore implements PersonStore {
+
+    private final Map<String, Person> byEmail = new ConcurrentHashMap<>();
+    private final Map<Long, Person> byId = new ConcurrentHashMap<>();
+
+    @Override
+    public Person findByEmail(String email) {
+        return byEmail.get(email);
+    }
+
+    @Override
+    public Person findById(long id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public Long contentHash(long id) {
+        Person person = byId.get(id);
+        return person == null ? null : Hashes.hash(person);
+    }
+
+    @Override
+    public synchronized void put(Person person) {
+        Person previous = byId.put(person.getId(), person);
+        if (previous != null && !previous.getEmail().equals(person.getEmail())) {
+            byEmail.remove(previous.getEmail(), previous);
+        }
+        Person sameEmail = byEmail.put(person.getEmail(), person);
+        if (sameEmail != null && !sameEmail.getId().equals(person.getId())) {
+            byId.remove(sameEmail.getId(), sameEmail);
+        }
+    }
+
+    @Override
+    public synchronized void remove(long id) {
+        Person previous = byId.remove(id);
+        if (previous != null) {
+            byEmail.remove(previous.getEmail(), previous);
+        }
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public long[] ids() {
+        return byId.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.auth_service.service;
+
+import java.util.Arrays;
+
+/**
+ * Скользящая оценка перцентиля задержки по последним {@code capacity} замерам.
+ * <p>
+ * Замеры пишутся в кольцевой буфер, а перцентиль пересчитывается сортировкой копии буфера
+ * раз в {@link #RECOMPUTE_EVERY} замеров, поэтому чтение перцентиля ничего не стоит.
+ */
+class LatencyTracker {
+
+    static final int RECOMPUTE_EVERY = 64;
+
+    private final long[] samples;
+    private final double percentile;
+    private int next;
+    private int count;
+    private long recorded;
+    private volatile long percentileNanos = -1;
+
+    LatencyTracker(int capacity, double percentile) {
+        this.samples = new long[capacity];
+        this.percentile = percentile;
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        if (++recorded % RECOMPUTE_EVERY == 0) {
+            final long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            percentileNanos = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+
+    /**
+     * @return текущая оценка перцентиля или -1, пока замеров недостаточно.
+     */
+    long percentileNanos() {
+        return percentileNanos;
+    }
+}
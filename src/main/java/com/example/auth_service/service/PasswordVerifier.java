@@ -0,0 +1,298 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.exceptions.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Проверка паролей пользователей.
+ * <p>
+ * Хэши BCrypt проверяются на отдельном пуле из {@code auth.password.threads} потоков с очередью
+ * {@code auth.password.queue}: при переполнении очереди вход отклоняется с 503, а не занимает потоки Tomcat.
+ * Успешные проверки запоминаются на {@code auth.password.cache-ttl} по HMAC от логина, пароля и хэша,
+ * поэтому повторный вход не платит полную цену хэширования, а смена пароля сбрасывает запись сама.
+ * Кэш состоит из двух поколений: новые записи идут в текущее, а когда оно старше ttl или заполнено
+ * на половину {@code auth.password.cache-size}, предыдущее выбрасывается целиком без обхода записей.
+ * Пароли, хранящиеся в UserService открытым текстом, сравниваются за постоянное время без пула.
+ * Стоимость BCrypt для новых хэшей подбирается при старте под {@code auth.password.target-latency}.
+ */
+@Slf4j
+@Component
+public class PasswordVerifier {
+
+    static final int MIN_COST = 4;
+    static final int MAX_COST = 16;
+    private static final String HMAC = "HmacSHA256";
+
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final Duration targetLatency;
+    private final long cacheTtlNanos;
+    private final int generationSize;
+    private volatile Generation current = new Generation(System.nanoTime());
+    private volatile Generation previous = new Generation(System.nanoTime());
+    private final SecretKeySpec cacheKey;
+    private final LongAdder hashed = new LongAdder();
+    private final boolean hashOnWrite;
+    private volatile int cost = 10;
+
+    public PasswordVerifier(
+            @Value("${auth.password.threads:0}") int threads,
+            @Value("${auth.password.queue:64}") int queue,
+            @Value("${auth.password.timeout:2s}") Duration timeout,
+            @Value("${auth.password.target-latency:100ms}") Duration targetLatency,
+            @Value("${auth.password.cache-ttl:60s}") Duration cacheTtl,
+            @Value("${auth.password.cache-size:10000}") int cacheSize,
+            @Value("${auth.password.hash-on-write:false}") boolean hashOnWrite
+    ) {
+        final int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), runnable -> {
+            final Thread thread = new Thread(runnable, "password-hash-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.timeout = timeout;
+        this.targetLatency = targetLatency;
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.generationSize = Math.max(1, cacheSize / 2);
+        this.hashOnWrite = hashOnWrite;
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, HMAC);
+    }
+
+    /**
+     * Подбирает наибольшую стоимость BCrypt, при которой хэширование укладывается в целевую задержку.
+     * Каждая единица стоимости удваивает время, поэтому замер идет от минимальной стоимости вверх.
+     */
+    @PostConstruct
+    public void calibrate() {
+        measure(MIN_COST);
+        int calibrated = MIN_COST;
+        long elapsed = measure(MIN_COST);
+        while (calibrated < MAX_COST && elapsed * 2 <= targetLatency.toNanos()) {
+            calibrated++;
+            elapsed = measure(calibrated);
+        }
+        cost = calibrated;
+        log.info("BCrypt cost {} takes {} ms, target {} ms", calibrated,
+                Duration.ofNanos(elapsed).toMillis(), targetLatency.toMillis());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param login    - email пользователя.
+     * @param password - пароль из запроса на вход.
+     * @param stored   - пароль или хэш BCrypt, полученный из UserService.
+     * @return совпадает ли пароль.
+     * @throws ServiceUnavailableException если очередь проверки переполнена или проверка не успела за таймаут.
+     */
+    public boolean matches(String login, String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isBcrypt(stored)) {
+            return MessageDigest.isEqual(
+                    password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        final ByteBuffer key = cacheKey(login, password, stored);
+        Long expires = current.entries.get(key);
+        if (expires == null) {
+            expires = previous.entries.get(key);
+        }
+        if (expires != null && expires - System.nanoTime() > 0) {
+            return true;
+        }
+        final boolean matches = await(submit(() -> BCrypt.checkpw(password, stored)));
+        if (matches) {
+            remember(key);
+        }
+        return matches;
+    }
+
+    /**
+     * @return хэш BCrypt пароля с откалиброванной стоимостью, хэширование выполняется на пуле проверки.
+     */
+    public String encode(String password) {
+        final int current = cost;
+        return await(submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(current))));
+    }
+
+    /**
+     * При {@code auth.password.hash-on-write: true} заменяет открытый пароль пользователя хэшем BCrypt
+     * перед отправкой в UserService.
+     *
+     * @return тот же пользователь.
+     */
+    public Person hashPassword(Person person) {
+        if (hashOnWrite && person != null && person.getPassword() != null && !isBcrypt(person.getPassword())) {
+            person.setPassword(encode(person.getPassword()));
+        }
+        return person;
+    }
+
+    /**
+     * Пакетный вариант {@link #hashPassword(Person)}: хэши считаются параллельно на пуле проверки,
+     * при этом от одного пакета в пуле не больше задач, чем потоков, чтобы не вытеснять входы из очереди.
+     *
+     * @return те же пользователи.
+     */
+    public List<Person> hashPasswords(List<Person> people) {
+        if (!hashOnWrite) {
+            return people;
+        }
+        final int window = executor.getMaximumPoolSize();
+        final Deque<Map.Entry<Person, Future<String>>> pending = new ArrayDeque<>(window);
+        try {
+            for (Person person : people) {
+                if (person == null || person.getPassword() == null || isBcrypt(person.getPassword())) {
+                    continue;
+                }
+                if (pending.size() == window) {
+                    complete(pending.removeFirst());
+                }
+                final String password = person.getPassword();
+                final int current = cost;
+                pending.addLast(Map.entry(person, submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(current)))));
+            }
+            while (!pending.isEmpty()) {
+                complete(pending.removeFirst());
+            }
+        } finally {
+            pending.forEach(entry -> entry.getValue().cancel(true));
+        }
+        return people;
+    }
+
+    public int cost() {
+        return cost;
+    }
+
+    /**
+     * @return число полных вычислений BCrypt, без попаданий в кэш.
+     */
+    long hashed() {
+        return hashed.sum();
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        try {
+            return executor.submit(() -> {
+                hashed.increment();
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Password hashing queue is full, rejecting request");
+            throw new ServiceUnavailableException("Сервис перегружен, повторите вход позже");
+        }
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ServiceUnavailableException("Проверка пароля не успела за " + timeout.toMillis() + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Проверка пароля прервана");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private void complete(Map.Entry<Person, Future<String>> entry) {
+        entry.getKey().setPassword(await(entry.getValue()));
+    }
+
+    private void remember(ByteBuffer key) {
+        final long now = System.nanoTime();
+        Generation generation = current;
+        if (now - generation.startedNanos >= cacheTtlNanos || generation.entries.size() >= generationSize) {
+            generation = rotate(generation, now);
+        }
+        generation.entries.put(key, now + cacheTtlNanos);
+    }
+
+    /**
+     * Записи предыдущего поколения к моменту смены по времени уже истекли, при смене по размеру
+     * теряются самые старые проверки.
+     */
+    private synchronized Generation rotate(Generation expected, long now) {
+        if (current == expected) {
+            previous = expected;
+            current = new Generation(now);
+        }
+        return current;
+    }
+
+    private ByteBuffer cacheKey(String login, String password, String stored) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC);
+            mac.init(cacheKey);
+            mac.update(String.valueOf(login).getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(password.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return ByteBuffer.wrap(mac.doFinal(stored.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static final class Generation {
+
+        private final Map<ByteBuffer, Long> entries = new ConcurrentHashMap<>();
+        private final long startedNanos;
+
+        private Generation(long startedNanos) {
+            this.startedNanos = startedNanos;
+        }
+    }
+
+    private static long measure(int cost) {
+        final String salt = BCrypt.gensalt(cost);
+        final long started = System.nanoTime();
+        BCrypt.hashpw("calibration", salt);
+        return System.nanoTime() - started;
+    }
+
+    private static boolean isBcrypt(String stored) {
+        return stored.length() == 60 && stored.charAt(0) == '$' && stored.charAt(1) == '2';
+    }
+}
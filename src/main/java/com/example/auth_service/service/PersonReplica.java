@@ -0,0 +1,202 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.ReadinessGate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Локальная реплика справочника пользователей UserService.
+ * При включенном режиме ({@code api.replica.enabled}) индекс по email и id загружается целиком при старте
+ * и затем периодически досинхронизируется, поэтому поиск при логине и обновлении токена не ходит по сети.
+ * Если реплика еще не прогрета, устарела больше допустимого или пользователь не найден,
+ * запрос уходит в {@link PersonService}.
+ * Записи хранятся в {@link HeapPersonStore} или, при {@code api.replica.storage: compact},
+ * в упакованном виде вне кучи в {@link CompactPersonStore}.
+ */
+@Slf4j
+@Service
+public class PersonReplica {
+
+    static final String READINESS_HOLD = "person-replica";
+
+    private final PersonService personService;
+    private final ReadinessGate readinessGate;
+    private final boolean enabled;
+    private final Duration syncInterval;
+    private final Duration maxStaleness;
+    private final PersonStore store;
+    private volatile boolean warmedUp;
+    private volatile long lastSyncNanos;
+    private ScheduledExecutorService scheduler;
+
+    public PersonReplica(
+            PersonService personService,
+            ReadinessGate readinessGate,
+            @Value("${api.replica.enabled:false}") boolean enabled,
+            @Value("${api.replica.sync-interval:30s}") Duration syncInterval,
+            @Value("${api.replica.max-staleness:2m}") Duration maxStaleness,
+            @Value("${api.replica.storage:heap}") String storage
+    ) {
+        this.personService = personService;
+        this.readinessGate = readinessGate;
+        this.enabled = enabled;
+        this.syncInterval = syncInterval;
+        this.maxStaleness = maxStaleness;
+        this.store = "compact".equals(storage) ? new CompactPersonStore() : new HeapPersonStore();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        readinessGate.hold(READINESS_HOLD);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "person-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sync, 0, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Метод отвечающий за получение пользователя по email из реплики или напрямую из UserService.
+     *
+     * @param email - логин пользователя.
+     * @return возвращает пользователя или BadRequest.
+     */
+    public Person getUserByEmail(final String email) {
+        if (isServing()) {
+            Person person = store.findByEmail(email);
+            if (person != null) {
+                return person;
+            }
+        }
+        return remember(personService.getUserByEmail(email));
+    }
+
+    /**
+     * Метод отвечающий за получение пользователя по id из реплики или напрямую из UserService.
+     *
+     * @param id - идентификатор пользователя.
+     * @return возвращает пользователя или BadRequest.
+     */
+    public Person getUserById(final long id) {
+        if (isServing()) {
+            Person person = store.findById(id);
+            if (person != null) {
+                return person;
+            }
+        }
+        return remember(personService.getUserById(id));
+    }
+
+    /**
+     * Обновляет запись реплики после изменения пользователя через этот сервис,
+     * не дожидаясь следующей синхронизации.
+     */
+    public Person remember(Person person) {
+        if (enabled && person != null && person.getId() != null && person.getEmail() != null) {
+            store.put(person);
+        }
+        return person;
+    }
+
+    public void evict(final long id) {
+        store.remove(id);
+    }
+
+    public boolean isServing() {
+        return enabled && warmedUp
+                && System.nanoTime() - lastSyncNanos <= maxStaleness.toNanos();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Читает пользователей из UserService потоком и применяет к индексу только разницу с текущим состоянием.
+     * Изменение определяется по хэшу содержимого, который хранилище отдает без сборки записи.
+     */
+    void sync() {
+        try {
+            SeenIds seen = new SeenIds(Math.max(store.size(), 16));
+            int[] changed = {0};
+            personService.streamAll()
+                    .doOnNext(person -> {
+                        if (person.getId() == null || person.getEmail() == null) {
+                            return;
+                        }
+                        seen.add(person.getId());
+                        if (!Long.valueOf(Hashes.hash(person)).equals(store.contentHash(person.getId()))) {
+                            remember(person);
+                            changed[0]++;
+                        }
+                    })
+                    .blockLast();
+            seen.sort();
+            for (long id : store.ids()) {
+                if (!seen.contains(id)) {
+                    evict(id);
+                    changed[0]++;
+                }
+            }
+            lastSyncNanos = System.nanoTime();
+            if (!warmedUp) {
+                warmedUp = true;
+                readinessGate.release(READINESS_HOLD);
+                log.info("Person replica warmed up with {} users", store.size());
+            } else if (changed[0] > 0) {
+                log.info("Person replica applied {} changes, {} users", changed[0], store.size());
+            }
+        } catch (Exception e) {
+            log.error("Person replica sync failed {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Id пользователей, полученных за одну синхронизацию, в растущем {@code long[]} без упаковки в Long.
+     */
+    private static final class SeenIds {
+
+        private long[] ids;
+        private int size;
+
+        private SeenIds(int capacity) {
+            ids = new long[capacity];
+        }
+
+        private void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void sort() {
+            Arrays.sort(ids, 0, size);
+        }
+
+        private boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
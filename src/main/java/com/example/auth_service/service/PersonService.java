@@ -1,22 +1,39 @@
 package com.example.auth_service.service;
 
+import com.example.auth_service.api.BatchResult;
 import com.example.auth_service.api.Person;
+import com.example.auth_service.api.RoleChange;
 import com.example.auth_service.config.Role;
+import com.example.auth_service.exceptions.PreconditionFailedException;
 import com.example.auth_service.exceptions.ValidationException;
+import com.example.auth_service.jfr.DownstreamCallRecorder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.validator.routines.EmailValidator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
+import java.net.ConnectException;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
@@ -25,7 +42,14 @@ public class PersonService {
 
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final int DELAY_MILLIS = 1000;
+    private static final long PATCH_PROBE_INTERVAL_MILLIS = 300_000;
     private final WebClient webClient;
+    private final RequestHedger requestHedger;
+    private volatile long patchUnsupportedUntil;
+    @Value("${api.batch.concurrency:32}")
+    private int batchConcurrency = 32;
+    @Value("${api.batch.max-size:10000}")
+    private int batchMaxSize = 10_000;
 
     /**
      * Метод отвечающий за создание HTTP запроса к микросервису для получения пользователя по email.
@@ -35,16 +59,17 @@ public class PersonService {
      */
     public Person getUserByEmail(final String email) {
         log.info("Request Person from getUserByEmail");
-        Person person = webClient.get()
-                .uri("/api/email/{id}", email)
-                .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, (ClientResponse clientResponse) -> {
-                    log.error("Incorrect request getUserByEmail");
-                    throw new ValidationException("Email is incorrect write");
-                })
-                .bodyToMono(Person.class)
+        Person person = requestHedger.hedge("getUserByEmail", webClient.get()
+                        .uri("/api/email/{id}", email)
+                        .retrieve()
+                        .onStatus(HttpStatus::is4xxClientError, (ClientResponse clientResponse) -> {
+                            log.error("Incorrect request getUserByEmail");
+                            throw new ValidationException("Email is incorrect write");
+                        })
+                        .bodyToMono(Person.class))
                 .doOnError(error -> log.error("An error has occurred {}", error.getMessage()))
                 .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
+                .transform(DownstreamCallRecorder.traced("getUserByEmail"))
                 .block();
         log.info("Confirm person from getUserByEmail");
         return person;
@@ -57,20 +82,31 @@ public class PersonService {
      * @return возвращает пользователя или BadRequest.
      */
     public Person getUserById(final long id) {
+        return getVersionedUserById(id).getBody();
+    }
+
+    /**
+     * Метод отвечающий за получение пользователя по id вместе с его версией.
+     *
+     * @param id - передается по http в заголовке запроса.
+     * @return возвращает пользователя с ETag от UserService или BadRequest.
+     */
+    public ResponseEntity<Person> getVersionedUserById(final long id) {
         log.info("Request Person from getUserById");
-        Person person = webClient.get()
-                .uri("api/{id}", id)
-                .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, (ClientResponse clientResponse) -> {
-                    log.error("User from id {} is no exist", id);
-                    throw new ValidationException(String.format("User from id %s is no exist", id));
-                })
-                .bodyToMono(Person.class)
+        ResponseEntity<Person> response = requestHedger.hedge("getUserById", webClient.get()
+                        .uri("api/{id}", id)
+                        .retrieve()
+                        .onStatus(HttpStatus::is4xxClientError, (ClientResponse clientResponse) -> {
+                            log.error("User from id {} is no exist", id);
+                            throw new ValidationException(String.format("User from id %s is no exist", id));
+                        })
+                        .toEntity(Person.class))
                 .doOnError(error -> log.error("An error has occurred {}", error.getMessage()))
                 .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
+                .transform(DownstreamCallRecorder.traced("getUserById"))
                 .block();
         log.info("Confirm Person from getUserById");
-        return person;
+        return versioned(response);
     }
 
     /**
@@ -81,9 +117,69 @@ public class PersonService {
      */
     public Person create(Person entity) {
         log.info("Request  create Person from {} {}", entity.getLastName(), entity.getFirstName());
+        validateCreate(entity);
+        Person person = createRequest(entity).block();
+        log.info("Completed create Person from {} {}", entity.getLastName(), entity.getFirstName());
+        return person;
+    }
+
+    /**
+     * Метод отвечающий за пакетное создание пользователей.
+     * Все пользователи проверяются до первого запроса, затем запросы к микросервису идут параллельно,
+     * но не больше {@code api.batch.concurrency} одновременно.
+     *
+     * @param entities - передается по http в теле запроса.
+     * @return возвращает результат по каждому пользователю в порядке завершения или BadRequest.
+     */
+    public Flux<BatchResult> createAll(List<Person> entities) {
+        log.info("Request batch create of {} Persons", entities.size());
+        validateCreateAll(entities);
+        return Flux.range(0, entities.size())
+                .flatMap(index -> toResult(index, createRequest(entities.get(index))), batchConcurrency);
+    }
+
+    /**
+     * Метод отвечающий за проверку пользователя перед созданием.
+     * Вызывается до хэширования пароля, чтобы не тратить на него время для заведомо неверных запросов.
+     *
+     * @param entity - пользователь из тела запроса.
+     */
+    public void validateCreate(Person entity) {
         checkValidEmail(entity.getEmail());
         validCreatePerson(entity);
-        Person person = webClient.post()
+    }
+
+    /**
+     * Метод отвечающий за проверку всех пользователей пакета перед созданием.
+     *
+     * @param entities - пользователи из тела запроса.
+     */
+    public void validateCreateAll(List<Person> entities) {
+        checkBatchSize(entities.size());
+        validateAll(entities, entity -> {
+            if (entity == null) {
+                throw new ValidationException("User is required");
+            }
+            validateCreate(entity);
+        });
+    }
+
+    /**
+     * Метод отвечающий за проверку измененных полей пользователя перед обновлением.
+     *
+     * @param entity - измененные поля из тела запроса.
+     */
+    public void validateUpdate(Person entity) {
+        if (!isBlank(entity.getEmail())) {
+            checkValidEmail(entity.getEmail());
+        }
+        if (changedFields(entity).isEmpty()) {
+            throw new ValidationException("User has no changes");
+        }
+    }
+
+    private Mono<Person> createRequest(Person entity) {
+        return webClient.post()
                 .uri("api")
                 .bodyValue(entity)
                 .retrieve()
@@ -93,35 +189,79 @@ public class PersonService {
                             entity.getLastName(), entity.getFirstName()));
                 })
                 .bodyToMono(Person.class)
-                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
-                .block();
-        log.info("Completed create Person from {} {}", entity.getLastName(), entity.getFirstName());
-        return person;
+                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS))
+                        .filter(PersonService::isConnectError))
+                .transform(DownstreamCallRecorder.traced("create"));
     }
 
     /**
-     * Метод отвечающий за создание HTTP запроса к микросервису на обнавление пользователя и получение его.
+     * Метод отвечающий за частичное обновление пользователя одним PATCH запросом с передачей только измененных полей.
+     * Если микросервис отвечает 405 или 501, выполняется обычное обновление через чтение и PUT.
+     * ETag пользователя - версия, выданная UserService, поэтому If-Match передается ему без изменений
+     * и проверяется им атомарно вместе с обновлением.
      *
-     * @param entity - передается по http в заголовке запроса.
-     * @return возвращает пользователя или BadRequest.
+     * @param id      - передается по http в заголовке запроса.
+     * @param entity  - измененные поля, пустые поля не меняются.
+     * @param ifMatch - ожидаемая версия пользователя из заголовка If-Match, может отсутствовать.
+     * @return возвращает пользователя с его новой версией в ETag, PreconditionFailed или BadRequest.
      */
-    public Person update(long id, Person entity) {
-        log.info("Request  update Person from {} {}", entity.getLastName(), entity.getFirstName());
-        entity.setId(id);
-        Person person = webClient.put()
-                .uri("api")
-                .bodyValue(createUpdatePerson(entity))
-                .retrieve()
-                .onStatus(HttpStatus::isError, (ClientResponse clientResponse) -> {
-                    log.error("Problem from update user {} {}", entity.getLastName(), entity.getFirstName());
-                    throw new ValidationException(String.format("Problem from update user %s %s",
-                            entity.getLastName(), entity.getFirstName()));
-                })
-                .bodyToMono(Person.class)
-                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
-                .block();
-        log.info("Completed update Person from {} {}", entity.getLastName(), entity.getFirstName());
-        return person;
+    public ResponseEntity<Person> patch(long id, Person entity, String ifMatch) {
+        log.info("Request  patch Person from {} {}", entity.getLastName(), entity.getFirstName());
+        validateUpdate(entity);
+        if (System.currentTimeMillis() < patchUnsupportedUntil) {
+            return updateIfMatch(id, entity, ifMatch);
+        }
+        final ResponseEntity<Person> response;
+        try {
+            response = webClient.method(HttpMethod.PATCH)
+                    .uri("api/{id}", id)
+                    .headers(headers -> {
+                        if (ifMatch != null) {
+                            headers.set(HttpHeaders.IF_MATCH, ifMatch);
+                        }
+                    })
+                    .bodyValue(changedFields(entity))
+                    .retrieve()
+                    .onStatus(status -> status == HttpStatus.METHOD_NOT_ALLOWED
+                            || status == HttpStatus.NOT_IMPLEMENTED, (ClientResponse clientResponse) -> {
+                        throw new PatchUnsupportedException();
+                    })
+                    .onStatus(status -> status == HttpStatus.NOT_FOUND, (ClientResponse clientResponse) -> {
+                        log.error("User from id {} is no exist", id);
+                        throw new ValidationException(String.format("User from id %s is no exist", id));
+                    })
+                    .onStatus(status -> status == HttpStatus.PRECONDITION_FAILED, (ClientResponse clientResponse) -> {
+                        log.error("User {} was changed concurrently", id);
+                        throw new PreconditionFailedException(String.format("User %s was changed concurrently", id));
+                    })
+                    .onStatus(HttpStatus::isError, (ClientResponse clientResponse) -> {
+                        log.error("Problem from patch user {} {}", entity.getLastName(), entity.getFirstName());
+                        throw new ValidationException(String.format("Problem from patch user %s %s",
+                                entity.getLastName(), entity.getFirstName()));
+                    })
+                    .toEntity(Person.class)
+                    .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS))
+                            .filter(error -> !(error instanceof PatchUnsupportedException
+                                    || error instanceof PreconditionFailedException
+                                    || error instanceof ValidationException)))
+                    .transform(DownstreamCallRecorder.traced("patch"))
+                    .block();
+        } catch (PatchUnsupportedException e) {
+            log.info("UserService does not support PATCH, falling back to read and PUT");
+            patchUnsupportedUntil = System.currentTimeMillis() + PATCH_PROBE_INTERVAL_MILLIS;
+            return updateIfMatch(id, entity, ifMatch);
+        }
+        log.info("Completed patch Person from {} {}", entity.getLastName(), entity.getFirstName());
+        return versioned(response);
+    }
+
+    /**
+     * @return пользователь с ETag от UserService или, если UserService его не выдает, с хэшем содержимого.
+     */
+    private static ResponseEntity<Person> versioned(ResponseEntity<Person> response) {
+        final Person person = Objects.requireNonNull(Objects.requireNonNull(response).getBody());
+        final String etag = response.getHeaders().getETag();
+        return ResponseEntity.ok().eTag(etag != null ? etag : ETags.of(person)).body(person);
     }
 
     /**
@@ -133,18 +273,42 @@ public class PersonService {
      */
     public Person updateRole(long id, Role role) {
         log.info("Request Person from updateRole");
-        Person person = webClient.put()
+        Person person = updateRoleRequest(id, role).block();
+        log.info("Confirm Person from updateRole");
+        return person;
+    }
+
+    /**
+     * Метод отвечающий за пакетное обновление ролей пользователей с ограниченным числом параллельных запросов.
+     *
+     * @param changes - передается по http в теле запроса.
+     * @return возвращает результат по каждому изменению в порядке завершения или BadRequest.
+     */
+    public Flux<BatchResult> updateRoles(List<RoleChange> changes) {
+        log.info("Request batch updateRole of {} Persons", changes.size());
+        checkBatchSize(changes.size());
+        validateAll(changes, change -> {
+            if (change == null || change.getId() == null || change.getRole() == null) {
+                throw new ValidationException("User id and role are required");
+            }
+        });
+        return Flux.range(0, changes.size())
+                .flatMap(index -> toResult(index,
+                        updateRoleRequest(changes.get(index).getId(), changes.get(index).getRole())), batchConcurrency);
+    }
+
+    private Mono<Person> updateRoleRequest(long id, Role role) {
+        return webClient.put()
                 .uri("api/{id}/change/{role}", id, role)
                 .retrieve()
-                .onStatus(HttpStatus::isError, (ClientResponse clientResponse) -> {
+                .onStatus(HttpStatus::is4xxClientError, (ClientResponse clientResponse) -> {
                     log.error("Problem from updateRole user {}", role);
                     throw new ValidationException(String.format("Problem from updateRole %s", role));
                 })
                 .bodyToMono(Person.class)
-                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
-                .block();
-        log.info("Confirm Person from updateRole");
-        return person;
+                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS))
+                        .filter(error -> isConnectError(error) || isServerError(error)))
+                .transform(DownstreamCallRecorder.traced("updateRole"));
     }
 
     /**
@@ -164,6 +328,7 @@ public class PersonService {
                 })
                 .bodyToMono(String.class)
                 .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
+                .transform(DownstreamCallRecorder.traced("removeById"))
                 .block();
         log.info("Confirm Person from removeById");
         return info;
@@ -182,11 +347,56 @@ public class PersonService {
                 .bodyToMono(new ParameterizedTypeReference<List<Person>>() {
                 })
                 .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
+                .transform(DownstreamCallRecorder.traced("getAll"))
                 .block()).stream().toList();
         log.info("Confirm Person from all List Users");
         return people;
     }
 
+    /**
+     * Метод отвечающий за получение всех пользователей по одному, не собирая полный список в памяти.
+     * Элементы массива разбираются по мере чтения ответа.
+     *
+     * @return возвращает поток пользователей.
+     */
+    public Flux<Person> streamAll() {
+        return webClient.get()
+                .uri("api/all")
+                .retrieve()
+                .bodyToFlux(Person.class)
+                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS)))
+                .transform(DownstreamCallRecorder.tracedMany("getAll"));
+    }
+
+    private <T> void validateAll(List<T> items, Consumer<T> validator) {
+        final List<String> errors = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                validator.accept(items.get(i));
+            } catch (ValidationException e) {
+                errors.add(String.format("item %s: %s", i, e.getMessage()));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ValidationException(String.join("; ", errors));
+        }
+    }
+
+    private void checkBatchSize(int size) {
+        if (size > batchMaxSize) {
+            throw new ValidationException(String.format("Batch size %s is over limit %s", size, batchMaxSize));
+        }
+    }
+
+    private static Mono<BatchResult> toResult(int index, Mono<Person> request) {
+        return request
+                .map(person -> new BatchResult(index, person, null))
+                .onErrorResume(error -> {
+                    final Throwable cause = Exceptions.isRetryExhausted(error) ? error.getCause() : error;
+                    return Mono.just(new BatchResult(index, null, cause.getMessage()));
+                });
+    }
+
     private void checkValidEmail(String email) {
         if (!EmailValidator.getInstance().isValid(email)) {
             log.error("User email invalid {}", email);
@@ -195,39 +405,128 @@ public class PersonService {
     }
 
     private void validCreatePerson(Person entity) {
-        if (entity.getFirstName().isBlank()) {
+        if (isBlank(entity.getFirstName())) {
             throw new ValidationException("User FirstName is  blank");
-        } else if (entity.getLastName().isBlank()) {
+        } else if (isBlank(entity.getLastName())) {
             throw new ValidationException("User LastName is blank");
+        } else if (entity.getBirthday() == null) {
+            throw new ValidationException("User Birthday is missing");
         } else if (entity.getBirthday().isAfter(LocalDate.now())) {
             throw new ValidationException("User Birthday is future");
-        } else if (entity.getPassword().isBlank()) {
+        } else if (isBlank(entity.getPassword())) {
             throw new ValidationException("User password is blank");
         }
     }
 
-    private Person createUpdatePerson(Person entity) {
-        Person updatePerson = getUserById(entity.getId());
+    /**
+     * Обновление без PATCH: If-Match сверяется с версией из чтения, чтобы не отправлять заведомо устаревший PUT,
+     * и передается в PUT без изменений, чтобы UserService отклонил изменение, сделанное между чтением и записью.
+     */
+    private ResponseEntity<Person> updateIfMatch(long id, Person entity, String ifMatch) {
+        entity.setId(id);
+        final ResponseEntity<Person> current = getVersionedUserById(id);
+        if (ifMatch != null && !ETags.matches(ifMatch, current.getHeaders().getETag())) {
+            log.error("User {} was changed concurrently", id);
+            throw new PreconditionFailedException(String.format("User %s was changed concurrently", id));
+        }
+        return versioned(put(createUpdatePerson(entity, current.getBody()), entity, ifMatch));
+    }
+
+    private ResponseEntity<Person> put(Person updatePerson, Person entity, String ifMatch) {
+        log.info("Request  update Person from {} {}", entity.getLastName(), entity.getFirstName());
+        ResponseEntity<Person> person = webClient.put()
+                .uri("api")
+                .headers(headers -> {
+                    if (ifMatch != null) {
+                        headers.set(HttpHeaders.IF_MATCH, ifMatch);
+                    }
+                })
+                .bodyValue(updatePerson)
+                .retrieve()
+                .onStatus(status -> status == HttpStatus.PRECONDITION_FAILED, (ClientResponse clientResponse) -> {
+                    log.error("User {} was changed concurrently", updatePerson.getId());
+                    throw new PreconditionFailedException(
+                            String.format("User %s was changed concurrently", updatePerson.getId()));
+                })
+                .onStatus(HttpStatus::isError, (ClientResponse clientResponse) -> {
+                    log.error("Problem from update user {} {}", entity.getLastName(), entity.getFirstName());
+                    throw new ValidationException(String.format("Problem from update user %s %s",
+                            entity.getLastName(), entity.getFirstName()));
+                })
+                .toEntity(Person.class)
+                .retryWhen(Retry.fixedDelay(MAX_RETRY_ATTEMPTS, Duration.ofMillis(DELAY_MILLIS))
+                        .filter(error -> !(error instanceof PreconditionFailedException)))
+                .transform(DownstreamCallRecorder.traced("put"))
+                .block();
+        log.info("Completed update Person from {} {}", entity.getLastName(), entity.getFirstName());
+        return person;
+    }
+
+    private Map<String, Object> changedFields(Person entity) {
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        if (!isBlank(entity.getEmail())) {
+            fields.put("email", entity.getEmail());
+        }
+        if (entity.getBirthday() != null && !entity.getBirthday().isAfter(LocalDate.now())) {
+            fields.put("birthday", entity.getBirthday());
+        }
+        if (!isBlank(entity.getFirstName())) {
+            fields.put("firstName", entity.getFirstName());
+        }
+        if (!isBlank(entity.getLastName())) {
+            fields.put("lastName", entity.getLastName());
+        }
+        if (!isBlank(entity.getPassword())) {
+            fields.put("password", entity.getPassword());
+        }
+        return fields;
+    }
+
+    private Person createUpdatePerson(Person entity, Person updatePerson) {
         updatePerson.setEmail(
-                entity.getEmail().isBlank() ?
+                isBlank(entity.getEmail()) ?
                         updatePerson.getEmail() :
                         entity.getEmail());
         updatePerson.setBirthday(
-                entity.getBirthday().isAfter(LocalDate.now()) ?
+                entity.getBirthday() == null || entity.getBirthday().isAfter(LocalDate.now()) ?
                         updatePerson.getBirthday() :
                         entity.getBirthday());
         updatePerson.setFirstName(
-                entity.getFirstName().isBlank() ?
+                isBlank(entity.getFirstName()) ?
                         updatePerson.getFirstName() :
                         entity.getFirstName());
         updatePerson.setLastName(
-                entity.getLastName().isBlank() ?
+                isBlank(entity.getLastName()) ?
                         updatePerson.getLastName() :
                         entity.getLastName());
         updatePerson.setPassword(
-                entity.getPassword().isBlank() ?
+                isBlank(entity.getPassword()) ?
                         updatePerson.getPassword() :
                         entity.getPassword());
         return updatePerson;
     }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Запрос не дошел до UserService, поэтому его можно повторить даже для неидемпотентного POST.
+     */
+    private static boolean isConnectError(Throwable error) {
+        return error instanceof ConnectException;
+    }
+
+    private static boolean isServerError(Throwable error) {
+        return error instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError();
+    }
+
+    /**
+     * UserService ответил на PATCH 405 или 501.
+     */
+    private static class PatchUnsupportedException extends RuntimeException {
+        PatchUnsupportedException() {
+            super("PATCH is not supported by UserService", null, false, false);
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+
+/**
+ * Локальное хранилище записей пользователей с индексами по email и id.
+ */
+public interface PersonStore {
+
+    Person findByEmail(String email);
+
+    Person findById(long id);
+
+    /**
+     * Добавляет или заменяет запись. Запись с тем же id или тем же email вытесняется.
+     */
+    void put(Person person);
+
+    /**
+     * @return {@link Hashes#hash(Person)} записи с этим id, без сборки объекта, или null, если записи нет.
+     */
+    Long contentHash(long id);
+
+    void remove(long id);
+
+    int size();
+
+    long[] ids();
+}
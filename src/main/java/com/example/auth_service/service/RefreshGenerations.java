@@ -0,0 +1,188 @@
+package com.example.auth_service.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Поколения refresh токенов по пользователям для режима {@code jwt.refresh.mode: generation}.
+ * <p>
+ * Refresh токен несет номер поколения, а сервер хранит только хэш логина и текущее поколение
+ * в таблице с открытой адресацией {@code long -> int} без упаковки в объекты (около 16 байт на пользователя).
+ * Увеличение поколения отзывает сразу все выданные пользователю refresh токены.
+ */
+@Component
+public class RefreshGenerations {
+
+    @FunctionalInterface
+    public interface Listener {
+        void changed(long key, int generation);
+    }
+
+    private static final int EMPTY = 0;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private long[] keys = new long[64];
+    private int[] generations = new int[64];
+    private int size;
+
+    public static long keyOf(String login) {
+        return Hashes.hash(login);
+    }
+
+    /**
+     * @return текущее поколение пользователя или 0, если токены ему не выдавались.
+     */
+    public synchronized int get(long key) {
+        int slot = find(key);
+        return slot < 0 ? EMPTY : generations[slot];
+    }
+
+    /**
+     * Начинает новое поколение, отзывая все прежние токены пользователя.
+     *
+     * @return номер нового поколения.
+     */
+    public int advance(long key) {
+        final int generation;
+        synchronized (this) {
+            int slot = find(key);
+            if (slot >= 0) {
+                generation = next(generations[slot]);
+                generations[slot] = generation;
+            } else {
+                generation = 1;
+                put(key, generation);
+            }
+        }
+        notifyListeners(key, generation);
+        return generation;
+    }
+
+    /**
+     * Отзывает все токены пользователя. Пользователю без выданных токенов запись не заводится.
+     *
+     * @return номер нового поколения или 0, если токены пользователю не выдавались.
+     */
+    public int revoke(long key) {
+        final int generation;
+        synchronized (this) {
+            int slot = find(key);
+            if (slot < 0) {
+                return EMPTY;
+            }
+            generation = next(generations[slot]);
+            generations[slot] = generation;
+        }
+        notifyListeners(key, generation);
+        return generation;
+    }
+
+    /**
+     * Начинает новое поколение, только если текущее совпадает с ожидаемым.
+     *
+     * @return номер нового поколения или 0, если токен уже отозван или использован.
+     */
+    public int advance(long key, int expected) {
+        final int generation;
+        synchronized (this) {
+            int slot = find(key);
+            if (slot < 0 || expected == EMPTY || generations[slot] != expected) {
+                return EMPTY;
+            }
+            generation = next(generations[slot]);
+            generations[slot] = generation;
+        }
+        notifyListeners(key, generation);
+        return generation;
+    }
+
+    /**
+     * Применяет поколение, пришедшее с другого узла, если оно новее локального.
+     *
+     * @return true, если поколение изменилось.
+     */
+    public synchronized boolean merge(long key, int generation) {
+        if (generation == EMPTY) {
+            return false;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            put(key, generation);
+            return true;
+        }
+        if (generation - generations[slot] <= 0) {
+            return false;
+        }
+        generations[slot] = generation;
+        return true;
+    }
+
+    public synchronized void forEach(Listener consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (generations[i] != EMPTY) {
+                consumer.changed(keys[i], generations[i]);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = (int) key & mask; generations[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void put(long key, int generation) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize();
+        }
+        insert(key, generation);
+        size++;
+    }
+
+    private void notifyListeners(long key, int generation) {
+        for (Listener listener : listeners) {
+            listener.changed(key, generation);
+        }
+    }
+
+    private void insert(long key, int generation) {
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        while (generations[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        generations[slot] = generation;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldGenerations = generations;
+        keys = new long[oldKeys.length * 2];
+        generations = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGenerations[i] != EMPTY) {
+                insert(oldKeys[i], oldGenerations[i]);
+            }
+        }
+    }
+
+    private static int next(int generation) {
+        return generation == Integer.MAX_VALUE ? 1 : generation + 1;
+    }
+}
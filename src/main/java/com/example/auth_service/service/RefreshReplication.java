@@ -0,0 +1,500 @@
+package com.example.auth_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Репликация состояния refresh токенов между экземплярами сервиса по TCP без внешнего хранилища.
+ * <p>
+ * Каждый узел слушает {@code jwt.refresh.replication.port} и держит исходящее соединение к каждому узлу
+ * из {@code jwt.refresh.replication.peers}. Локальные изменения {@link RefreshStorage} и {@link RefreshGenerations}
+ * попадают в очередь каждого соседа и отправляются пачками одним flush без ожидания подтверждений.
+ * Соединение двунаправленное: после рукопожатия обе стороны сначала отправляют друг другу весь свой снимок
+ * состояния, а затем свои изменения, поэтому новый или вернувшийся узел догоняет остальных, даже если
+ * они не знают о нем и знает о них только он. В простое соединение проверяется пульсом раз в секунду.
+ * Конфликты разрешаются слиянием на принимающей стороне: для токенов побеждает последняя запись,
+ * для поколений - большее поколение.
+ * <p>
+ * Узел слушает только {@code jwt.refresh.replication.bind-address} (по умолчанию loopback). Рукопожатие взаимное:
+ * каждая сторона отвечает на случайный вызов другой HMAC-SHA256 от общего секрета
+ * {@code jwt.refresh.replication.secret}, и никакие данные не отправляются, пока обе стороны не доказали
+ * знание секрета. Записи токенов со временем дальше
+ * {@code jwt.refresh.replication.max-clock-skew} впереди локальных часов отбрасываются, иначе такая запись
+ * побеждала бы все последующие. Соединение не шифруется: в недоверенной сети нужен TLS или VPN между узлами.
+ */
+@Slf4j
+@Component
+public class RefreshReplication {
+
+    private static final int PROTOCOL_VERSION = 3;
+    private static final byte CONNECTOR_ROLE = 'C';
+    private static final byte LISTENER_ROLE = 'L';
+    private static final String HMAC = "HmacSHA256";
+    private static final int CHALLENGE_BYTES = 32;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final byte HELLO = 0;
+    private static final byte TOKEN = 1;
+    private static final byte GENERATION = 2;
+    private static final byte HEARTBEAT = 3;
+    private static final int QUEUE_CAPACITY = 65_536;
+    private static final int BATCH_SIZE = 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+
+    private record GenerationUpdate(long key, int generation) {
+    }
+
+    private final RefreshStorage refreshStorage;
+    private final RefreshGenerations refreshGenerations;
+    private final boolean enabled;
+    private final String bindAddress;
+    private final int port;
+    private final byte[] secret;
+    private final long maxClockSkewMillis;
+    private final List<InetSocketAddress> peers;
+    private final List<Peer> connections = new CopyOnWriteArrayList<>();
+    private final List<Link> inbound = new CopyOnWriteArrayList<>();
+    private final List<Socket> inboundSockets = new CopyOnWriteArrayList<>();
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    public RefreshReplication(
+            RefreshStorage refreshStorage,
+            RefreshGenerations refreshGenerations,
+            @Value("${jwt.refresh.replication.enabled:false}") boolean enabled,
+            @Value("${jwt.refresh.replication.bind-address:127.0.0.1}") String bindAddress,
+            @Value("${jwt.refresh.replication.port:7701}") int port,
+            @Value("${jwt.refresh.replication.peers:}") String peers,
+            @Value("${jwt.refresh.replication.secret:}") String secret,
+            @Value("${jwt.refresh.replication.max-clock-skew:30s}") Duration maxClockSkew
+    ) {
+        this.refreshStorage = refreshStorage;
+        this.refreshGenerations = refreshGenerations;
+        this.enabled = enabled;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.maxClockSkewMillis = maxClockSkew.toMillis();
+        this.peers = parsePeers(peers);
+        if (enabled && this.secret.length < 16) {
+            throw new IllegalStateException(
+                    "jwt.refresh.replication.secret must be set to at least 16 bytes when replication is enabled");
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+        daemon("refresh-replication-accept", this::acceptLoop).start();
+        refreshStorage.addListener(this::enqueue);
+        refreshGenerations.addListener((key, generation) -> enqueue(new GenerationUpdate(key, generation)));
+        peers.forEach(this::connect);
+        log.info("Refresh replication listening on {}:{} with peers {}",
+                bindAddress, serverSocket.getLocalPort(), peers);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        connections.forEach(Peer::close);
+        inboundSockets.forEach(this::closeQuietly);
+    }
+
+    public int localPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Подключает соседа, которого не было в конфигурации при старте.
+     */
+    public void connect(InetSocketAddress address) {
+        Peer peer = new Peer(address);
+        connections.add(peer);
+        daemon("refresh-replication-" + address, peer::run).start();
+    }
+
+    private void enqueue(Object update) {
+        for (Peer peer : connections) {
+            peer.link.offer(update);
+        }
+        for (Link link : inbound) {
+            link.offer(update);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                daemon("refresh-replication-in-" + socket.getRemoteSocketAddress(), () -> serve(socket)).start();
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Refresh replication accept failed {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Входящее соединение после взаимной проверки работает в обе стороны: узел читает записи соседа
+     * и сам отправляет ему снимок и свои изменения, поэтому новому узлу достаточно знать адрес одного соседа.
+     */
+    private void serve(Socket socket) {
+        Link link = new Link();
+        inboundSockets.add(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            if (!acceptHandshake(socket, in, out)) {
+                return;
+            }
+            inbound.add(link);
+            daemon("refresh-replication-out-" + socket.getRemoteSocketAddress(), () -> {
+                try {
+                    link.pump(socket, out);
+                } catch (IOException e) {
+                    closeQuietly(socket);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }).start();
+            receive(socket, in);
+        } catch (IOException e) {
+            if (running) {
+                log.error("Refresh replication handshake with {} failed {}", socket.getRemoteSocketAddress(),
+                        e.getMessage());
+            }
+        } finally {
+            inbound.remove(link);
+            inboundSockets.remove(socket);
+            link.close();
+        }
+    }
+
+    private void receive(Socket socket, DataInputStream in) {
+        try {
+            while (running) {
+                byte type = in.readByte();
+                if (type == TOKEN) {
+                    String login = in.readUTF();
+                    String token = in.readBoolean() ? in.readUTF() : null;
+                    long timestamp = in.readLong();
+                    String origin = in.readUTF();
+                    if (timestamp - System.currentTimeMillis() > maxClockSkewMillis) {
+                        log.warn("Refresh replication peer {} sent a record {} ms in the future, dropped",
+                                socket.getRemoteSocketAddress(), timestamp - System.currentTimeMillis());
+                        continue;
+                    }
+                    refreshStorage.merge(new RefreshStorage.Entry(login, token, timestamp, origin));
+                } else if (type == GENERATION) {
+                    refreshGenerations.merge(in.readLong(), in.readInt());
+                } else if (type != HEARTBEAT) {
+                    throw new IOException("Unknown replication record " + type);
+                }
+            }
+        } catch (EOFException e) {
+            log.info("Refresh replication peer {} disconnected", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            if (running && !socket.isClosed()) {
+                log.error("Refresh replication receive failed {}", e.getMessage());
+            }
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Сторона, принявшая соединение: получает вызов соседа, отвечает своим вызовом и доказательством
+     * знания секрета, затем проверяет доказательство соседа. До успешной проверки ничего, кроме
+     * рукопожатия, не отправляется.
+     */
+    private boolean acceptHandshake(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        if (in.readByte() != HELLO || in.readInt() != PROTOCOL_VERSION) {
+            log.error("Refresh replication peer {} speaks another protocol", socket.getRemoteSocketAddress());
+            return false;
+        }
+        byte[] peerChallenge = new byte[CHALLENGE_BYTES];
+        in.readFully(peerChallenge);
+        byte[] challenge = challenge();
+        out.write(challenge);
+        out.write(sign(LISTENER_ROLE, peerChallenge, challenge));
+        out.flush();
+        byte[] proof = new byte[CHALLENGE_BYTES];
+        in.readFully(proof);
+        if (!MessageDigest.isEqual(proof, sign(CONNECTOR_ROLE, peerChallenge, challenge))) {
+            log.error("Refresh replication peer {} failed authentication", socket.getRemoteSocketAddress());
+            return false;
+        }
+        socket.setSoTimeout(0);
+        return true;
+    }
+
+    /**
+     * Сторона, открывшая соединение: отправляет свой вызов и отвечает на вызов соседа, только убедившись,
+     * что сосед сам знает секрет.
+     */
+    private boolean connectHandshake(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        byte[] challenge = challenge();
+        out.writeByte(HELLO);
+        out.writeInt(PROTOCOL_VERSION);
+        out.write(challenge);
+        out.flush();
+        byte[] peerChallenge = new byte[CHALLENGE_BYTES];
+        in.readFully(peerChallenge);
+        byte[] proof = new byte[CHALLENGE_BYTES];
+        in.readFully(proof);
+        if (!MessageDigest.isEqual(proof, sign(LISTENER_ROLE, challenge, peerChallenge))) {
+            log.error("Refresh replication peer {} failed authentication", socket.getRemoteSocketAddress());
+            return false;
+        }
+        out.write(sign(CONNECTOR_ROLE, challenge, peerChallenge));
+        out.flush();
+        socket.setSoTimeout(0);
+        return true;
+    }
+
+    private byte[] challenge() {
+        byte[] challenge = new byte[CHALLENGE_BYTES];
+        random.nextBytes(challenge);
+        return challenge;
+    }
+
+    /**
+     * Роль входит в подпись, поэтому ответ одной стороны нельзя переиспользовать за другую,
+     * а узел не подписывает вызов как открывающая сторона, пока сосед не доказал знание секрета.
+     *
+     * @param connectorChallenge - вызов открывшей соединение стороны.
+     * @param listenerChallenge  - вызов принявшей соединение стороны.
+     */
+    private byte[] sign(byte role, byte[] connectorChallenge, byte[] listenerChallenge) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            mac.update((byte) PROTOCOL_VERSION);
+            mac.update(role);
+            mac.update(connectorChallenge);
+            return mac.doFinal(listenerChallenge);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static void write(DataOutputStream out, Object update) throws IOException {
+        if (update instanceof RefreshStorage.Entry entry) {
+            out.writeByte(TOKEN);
+            out.writeUTF(entry.login());
+            out.writeBoolean(entry.token() != null);
+            if (entry.token() != null) {
+                out.writeUTF(entry.token());
+            }
+            out.writeLong(entry.timestamp());
+            out.writeUTF(entry.origin());
+        } else if (update instanceof GenerationUpdate generation) {
+            out.writeByte(GENERATION);
+            out.writeLong(generation.key());
+            out.writeInt(generation.generation());
+        }
+    }
+
+    /**
+     * @param peers - список {@code host:port} через запятую.
+     * @throws IllegalStateException если элемент списка не в формате {@code host:port}.
+     */
+    static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .forEach(peer -> {
+                    int colon = peer.lastIndexOf(':');
+                    int port = colon > 0 ? parsePort(peer.substring(colon + 1)) : -1;
+                    if (port < 1 || port > 65_535) {
+                        throw new IllegalStateException(
+                                "Invalid jwt.refresh.replication.peers entry '" + peer + "', expected host:port");
+                    }
+                    addresses.add(InetSocketAddress.createUnresolved(peer.substring(0, colon), port));
+                });
+        return addresses;
+    }
+
+    private static int parsePort(String port) {
+        try {
+            return Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Thread daemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            log.debug("Close failed {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Отправляющая сторона одного соединения: очередь изменений, снимок при подключении и пульс в простое.
+     */
+    private class Link {
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicBoolean overflow = new AtomicBoolean();
+
+        void offer(Object update) {
+            if (!queue.offer(update)) {
+                overflow.set(true);
+            }
+        }
+
+        /**
+         * Отправляет снимок, затем изменения пачками, пока соединение открыто.
+         */
+        void pump(Socket socket, DataOutputStream out) throws IOException, InterruptedException {
+            List<Object> batch = new ArrayList<>(BATCH_SIZE);
+            sendSnapshot(out);
+            while (running && !socket.isClosed()) {
+                Object first = queue.poll(1, TimeUnit.SECONDS);
+                if (overflow.getAndSet(false)) {
+                    sendSnapshot(out);
+                }
+                if (first == null) {
+                    out.writeByte(HEARTBEAT);
+                    out.flush();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (Object update : batch) {
+                    write(out, update);
+                }
+                batch.clear();
+                out.flush();
+            }
+        }
+
+        /**
+         * Отправляет соседу все состояние. Очередь очищается до снимка: изменения, сделанные во время обхода,
+         * попадут в очередь заново и уйдут следом.
+         */
+        private void sendSnapshot(DataOutputStream out) throws IOException {
+            queue.clear();
+            for (RefreshStorage.Entry entry : refreshStorage.snapshot()) {
+                write(out, entry);
+            }
+            List<GenerationUpdate> generations = new ArrayList<>();
+            refreshGenerations.forEach((key, generation) -> generations.add(new GenerationUpdate(key, generation)));
+            for (GenerationUpdate generation : generations) {
+                write(out, generation);
+            }
+            out.flush();
+        }
+
+        void close() {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Исходящее соединение к одному соседу, переподключается после обрыва.
+     */
+    private class Peer {
+
+        private final InetSocketAddress address;
+        private final Link link = new Link();
+        private volatile Socket socket;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void run() {
+            while (running) {
+                try (Socket connection = new Socket()) {
+                    socket = connection;
+                    connection.setTcpNoDelay(true);
+                    connection.setKeepAlive(true);
+                    connection.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                            CONNECT_TIMEOUT_MILLIS);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(connection.getOutputStream(), 1 << 16));
+                    if (!connectHandshake(connection, in, out)) {
+                        sleep();
+                        continue;
+                    }
+                    log.info("Refresh replication connected to {}", address);
+                    daemon("refresh-replication-from-" + address, () -> receive(connection, in)).start();
+                    link.pump(connection, out);
+                } catch (IOException e) {
+                    if (running) {
+                        log.warn("Refresh replication to {} failed {}", address, e.getMessage());
+                        sleep();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.auth_service.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Текущие refresh токены пользователей для режима {@code jwt.refresh.mode: stored}.
+ * <p>
+ * Каждая запись несет время изменения и идентификатор узла, на котором она сделана,
+ * поэтому записи с разных экземпляров сервиса сходятся по правилу "побеждает последняя запись".
+ * Отзыв хранится как запись без токена, чтобы он тоже реплицировался. Такие записи удаляются через
+ * {@code jwt.refresh.tombstone-ttl}, который не должен быть короче срока жизни refresh токена: токен,
+ * отозванный раньше, к этому моменту истек и не воскреснет, даже если придет со старого узла.
+ */
+@Component
+public class RefreshStorage {
+
+    public record Entry(String login, String token, long timestamp, String origin) {
+
+        boolean newerThan(Entry other) {
+            if (timestamp != other.timestamp) {
+                return timestamp > other.timestamp;
+            }
+            return origin.compareTo(other.origin) > 0;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Consumer<Entry>> listeners = new CopyOnWriteArrayList<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long tombstoneTtlMillis;
+    private final AtomicLong nextPurge;
+
+    public RefreshStorage() {
+        this(Duration.ofDays(30));
+    }
+
+    @Autowired
+    public RefreshStorage(@Value("${jwt.refresh.tombstone-ttl:30d}") Duration tombstoneTtl) {
+        this.tombstoneTtlMillis = tombstoneTtl.toMillis();
+        this.nextPurge = new AtomicLong(System.currentTimeMillis() + tombstoneTtlMillis / 2);
+    }
+
+    public String get(String login) {
+        final Entry entry = entries.get(login);
+        return entry == null ? null : entry.token();
+    }
+
+    public void put(String login, String token) {
+        write(login, token);
+    }
+
+    public void remove(String login) {
+        write(login, null);
+    }
+
+    /**
+     * Применяет запись, пришедшую с другого узла, если она новее локальной.
+     *
+     * @return true, если запись применена.
+     */
+    public boolean merge(Entry entry) {
+        final boolean[] applied = new boolean[1];
+        entries.compute(entry.login(), (login, current) -> {
+            if (current == null || entry.newerThan(current)) {
+                applied[0] = true;
+                return entry;
+            }
+            return current;
+        });
+        purgeIfDue();
+        return applied[0];
+    }
+
+    /**
+     * Удаляет отзывы старше {@code jwt.refresh.tombstone-ttl}.
+     *
+     * @return число удаленных записей.
+     */
+    public int purgeTombstones(long now) {
+        final long cutoff = now - tombstoneTtlMillis;
+        final int before = entries.size();
+        entries.values().removeIf(entry -> entry.token() == null && entry.timestamp() < cutoff);
+        return before - entries.size();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Collection<Entry> snapshot() {
+        return List.copyOf(entries.values());
+    }
+
+    public void addListener(Consumer<Entry> listener) {
+        listeners.add(listener);
+    }
+
+    private void write(String login, String token) {
+        final Entry entry = entries.compute(login, (key, current) -> {
+            long timestamp = System.currentTimeMillis();
+            if (current != null && current.timestamp() >= timestamp) {
+                timestamp = current.timestamp() + 1;
+            }
+            return new Entry(key, token, timestamp, nodeId);
+        });
+        for (Consumer<Entry> listener : listeners) {
+            listener.accept(entry);
+        }
+        purgeIfDue();
+    }
+
+    private void purgeIfDue() {
+        final long now = System.currentTimeMillis();
+        final long purgeAt = nextPurge.get();
+        if (now >= purgeAt && nextPurge.compareAndSet(purgeAt, now + tombstoneTtlMillis / 2)) {
+            purgeTombstones(now);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.auth_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Дублирование (hedging) идемпотентных чтений из UserService для срезания хвоста задержек.
+ * <p>
+ * Если первый запрос не ответил за перцентиль {@code api.hedge.percentile} задержки этой операции,
+ * отправляется второй такой же запрос, побеждает ответивший первым, а второй отменяется.
+ * Второй запрос тратит токен из бюджета, который пополняется на {@code api.hedge.budget} с каждого
+ * запроса, поэтому дублей не больше этой доли от общего числа запросов.
+ * Дублируются только точечные чтения: выгрузка всех пользователей и синхронизация реплики идут без дублей.
+ * <p>
+ * Задержка основного запроса, отмененного из-за победы дубля, учитывается временем до отмены,
+ * иначе в окно попадали бы только быстрые ответы и порог дублирования уползал бы вниз.
+ */
+@Slf4j
+@Component
+public class RequestHedger {
+
+    public record Stats(long requests, long hedges, long wins, long delayMillis) {
+    }
+
+    private record Attempt<T>(T value, boolean hedged) {
+    }
+
+    private static final int WINDOW = 1024;
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final AtomicLong tokens = new AtomicLong();
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long deposit;
+
+    public RequestHedger(
+            @Value("${api.hedge.enabled:false}") boolean enabled,
+            @Value("${api.hedge.percentile:0.95}") double percentile,
+            @Value("${api.hedge.min-delay:5ms}") Duration minDelay,
+            @Value("${api.hedge.budget:0.05}") double budget
+    ) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.deposit = Math.round(budget * TOKEN);
+    }
+
+    public static RequestHedger disabled() {
+        return new RequestHedger(false, 0.95, Duration.ZERO, 0);
+    }
+
+    /**
+     * @param operation - имя операции, задержки которой отслеживаются отдельно.
+     * @param request   - холодный запрос, каждая подписка на который отправляет новый HTTP запрос.
+     * @return ответ первого успевшего запроса.
+     */
+    public <T> Mono<T> hedge(String operation, Mono<T> request) {
+        if (!enabled) {
+            return request;
+        }
+        return Mono.defer(() -> {
+            final Operation stats = operations.computeIfAbsent(operation, name -> new Operation());
+            stats.requests.increment();
+            deposit();
+            final Mono<Attempt<T>> primary = timed(stats, request, false);
+            final long delay = stats.delayNanos();
+            if (delay < 0) {
+                return primary.map(Attempt::value);
+            }
+            final Mono<Attempt<T>> hedged = Mono.delay(Duration.ofNanos(delay))
+                    .flatMap(tick -> {
+                        if (!withdraw()) {
+                            return Mono.never();
+                        }
+                        stats.hedges.increment();
+                        return timed(stats, request, true)
+                                .onErrorResume(error -> Mono.never());
+                    });
+            return Mono.firstWithSignal(primary, hedged)
+                    .doOnNext(attempt -> {
+                        if (attempt.hedged()) {
+                            stats.wins.increment();
+                        }
+                    })
+                    .map(Attempt::value);
+        });
+    }
+
+    /**
+     * @return счетчики запросов, дублей и побед дублей по операциям.
+     */
+    public Map<String, Stats> stats() {
+        final Map<String, Stats> result = new TreeMap<>();
+        operations.forEach((name, operation) -> result.put(name, new Stats(
+                operation.requests.sum(),
+                operation.hedges.sum(),
+                operation.wins.sum(),
+                Math.max(0, operation.delayNanos()) / 1_000_000)));
+        return result;
+    }
+
+    /**
+     * Отмена дубля не записывается: он стартовал позже основного, и время до отмены занижало бы задержку.
+     */
+    private <T> Mono<Attempt<T>> timed(Operation stats, Mono<T> request, boolean hedged) {
+        return Mono.defer(() -> {
+            final long started = System.nanoTime();
+            return request
+                    .doOnNext(value -> stats.latency.record(System.nanoTime() - started))
+                    .doOnCancel(() -> {
+                        if (!hedged) {
+                            stats.latency.record(System.nanoTime() - started);
+                        }
+                    })
+                    .map(value -> new Attempt<>(value, hedged));
+        });
+    }
+
+    private void deposit() {
+        tokens.getAndUpdate(current -> Math.min(MAX_TOKENS, current + deposit));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * Задержки и счетчики одной операции.
+     */
+    private class Operation {
+
+        private final LatencyTracker latency = new LatencyTracker(WINDOW, percentile);
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder wins = new LongAdder();
+
+        long delayNanos() {
+            final long observed = latency.percentileNanos();
+            return observed < 0 ? -1 : Math.max(minDelayNanos, observed);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Короткоживущий кэш уже сериализованных ответов для частых опросов списка и карточки пользователя.
+ * <p>
+ * Повторный запрос в пределах {@code api.cache.ttl} не ходит в UserService и не сериализует ответ заново,
+ * а запрос с совпавшим If-None-Match получает 304 без тела. Одновременные промахи по одному ключу
+ * ждут одну загрузку.
+ * <p>
+ * Ответы содержат пароли пользователей, поэтому устаревшие записи удаляются обходом не реже раза в ttl,
+ * а не лежат до следующего запроса по тому же ключу. Число записей ограничено {@code api.cache.max-entries}:
+ * при заполненном кэше ответ сериализуется без сохранения.
+ */
+@Component
+public class SerializedResponseCache {
+
+    public record Cached(byte[] body, String etag, long expiresAtNanos) {
+    }
+
+    private final Map<String, CompletableFuture<Cached>> entries = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final AtomicLong nextSweep;
+
+    public SerializedResponseCache(
+            ObjectMapper objectMapper,
+            @Value("${api.cache.ttl:2s}") Duration ttl,
+            @Value("${api.cache.max-entries:1000}") int maxEntries
+    ) {
+        this.objectMapper = objectMapper;
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.nextSweep = new AtomicLong(System.nanoTime() + ttlNanos);
+    }
+
+    /**
+     * @param key    - ключ ответа.
+     * @param loader - загрузка значения при промахе или устаревшей записи.
+     * @return сериализованный ответ и его ETag. Если загрузка вернула {@link ResponseEntity} с ETag, например
+     * пользователя с версией от UserService, кэшируется его тело под этим ETag, чтобы ETag можно было
+     * передать в If-Match при обновлении.
+     */
+    public Cached get(String key, Supplier<?> loader) {
+        sweepIfDue();
+        while (true) {
+            CompletableFuture<Cached> current = entries.get(key);
+            if (current != null && !isExpired(current)) {
+                return join(key, current);
+            }
+            if (current == null && entries.size() >= maxEntries) {
+                return serialize(loader.get());
+            }
+            CompletableFuture<Cached> loading = new CompletableFuture<>();
+            boolean won = current == null
+                    ? entries.putIfAbsent(key, loading) == null
+                    : entries.replace(key, current, loading);
+            if (!won) {
+                continue;
+            }
+            try {
+                loading.complete(serialize(loader.get()));
+            } catch (RuntimeException e) {
+                entries.remove(key, loading);
+                loading.completeExceptionally(e);
+                throw e;
+            }
+            return loading.join();
+        }
+    }
+
+    public void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Удаляет устаревшие записи. Обход запускает не больше одного потока за ttl.
+     */
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + ttlNanos)) {
+            return;
+        }
+        entries.entrySet().removeIf(entry -> isExpired(entry.getValue()));
+    }
+
+    private Cached serialize(Object loaded) {
+        try {
+            Object value = loaded instanceof ResponseEntity<?> entity ? entity.getBody() : loaded;
+            byte[] body = objectMapper.writeValueAsBytes(value);
+            String etag = loaded instanceof ResponseEntity<?> entity && entity.getHeaders().getETag() != null
+                    ? entity.getHeaders().getETag()
+                    : value instanceof Person person ? ETags.of(person) : ETags.of(body);
+            return new Cached(body, etag, System.nanoTime() + ttlNanos);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response serialization failed", e);
+        }
+    }
+
+    private static boolean isExpired(CompletableFuture<Cached> future) {
+        return future.isDone() && !future.isCompletedExceptionally()
+                && System.nanoTime() - future.join().expiresAtNanos() > 0;
+    }
+
+    private Cached join(String key, CompletableFuture<Cached> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            entries.remove(key, future);
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.auth_service.audit;
+
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Стоимость события аудита для потока запроса: {@link AuditLog#record} против синхронной записи строки
+ * в файл со сбросом буфера на каждое событие. Буфер вмещает все события прогона, поэтому замер
+ * показывает именно цену записи в кольцо, а не пропускную способность потока записи.
+ * <p>
+ * Запуск:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *     -Dthreads=4 -Devents=2000000 com.example.auth_service.audit.AuditLogBenchmark
+ * </pre>
+ * где {@code cp.txt} получен через {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+public class AuditLogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("threads", 4);
+        int events = Integer.getInteger("events", 2_000_000);
+        Path directory = Files.createTempDirectory("audit-benchmark");
+
+        AuditLog auditLog = new AuditLog(true, directory.resolve("ring").toString(),
+                DataSize.ofMegabytes(64), Integer.highestOneBit(events) << 1, "block");
+        auditLog.start();
+        run("ring warm-up", threads, events, (i, login) -> auditLog.record(AuditEvent.LOGIN, login));
+        while (auditLog.written() < events) {
+            Thread.sleep(10);
+        }
+        run("ring", threads, events, (i, login) -> auditLog.record(AuditEvent.LOGIN, login));
+        auditLog.stop();
+        System.out.printf("ring: written %d, dropped %d%n", auditLog.written(), auditLog.dropped());
+
+        try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve("sync.log"))) {
+            Event sync = (i, login) -> {
+                synchronized (writer) {
+                    try {
+                        writer.write(System.currentTimeMillis() + " LOGIN " + login);
+                        writer.newLine();
+                        writer.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            run("sync warm-up", threads, events / 10, sync);
+            run("sync", threads, events / 10, sync);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Event {
+        void record(int index, String login);
+    }
+
+    private static void run(String name, int threads, int events, Event event) throws InterruptedException {
+        int perThread = events / threads;
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            String login = "user" + t + "@mail.com";
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    event.record(i, login);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%s: %d threads, %.1f ns/event per thread%n",
+                name, threads, (double) elapsed * threads / (perThread * threads));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.auth_service.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка записи и чтения журнала аудита {@link AuditLog}.
+ */
+class AuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesEventsFromManyThreadsAndReadsThemBack() throws Exception {
+        AuditLog auditLog = auditLog(DataSize.ofMegabytes(1), 1024, "block");
+        auditLog.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String login = "user" + t + "@mail.com";
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    auditLog.record(i % 2 == 0 ? AuditEvent.LOGIN : AuditEvent.REFRESH, login);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        auditLog.stop();
+
+        List<AuditRecord> records = read();
+        assertThat(auditLog.dropped()).isZero();
+        assertThat(auditLog.written()).isEqualTo(20_000);
+        assertThat(records).hasSize(20_000);
+        assertThat(records).filteredOn(record -> record.login().equals("user3@mail.com")).hasSize(5000);
+        assertThat(records.get(0).timestamp()).isPositive();
+    }
+
+    @Test
+    void rotatesSegmentsAndTruncatesLongLogins() throws Exception {
+        AuditLog auditLog = auditLog(DataSize.ofBytes(AuditRecord.SIZE * 11), 64, "block");
+        auditLog.start();
+        String longLogin = "a".repeat(100) + "@mail.com";
+        for (int i = 0; i < 25; i++) {
+            auditLog.record(AuditEvent.LOGIN_FAILED, longLogin);
+        }
+        auditLog.stop();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(3);
+        }
+        List<AuditRecord> records = read();
+        assertThat(records).hasSize(25);
+        assertThat(records.get(24).event()).isEqualTo(AuditEvent.LOGIN_FAILED);
+        assertThat(records.get(24).login()).hasSize(AuditRecord.MAX_LOGIN_BYTES);
+        assertThat(records.get(24).loginHash()).isNotZero();
+    }
+
+    @Test
+    void dropsAndCountsEventsWhenBufferIsFull() throws Exception {
+        AuditLog auditLog = auditLog(DataSize.ofMegabytes(1), 16, "drop");
+        auditLog.start();
+        auditLog.stop();
+
+        for (int i = 0; i < 20; i++) {
+            auditLog.record(AuditEvent.LOGIN, "user@mail.com");
+        }
+
+        assertThat(auditLog.dropped()).isEqualTo(4);
+    }
+
+    private AuditLog auditLog(DataSize segmentSize, int bufferSize, String overflow) {
+        return new AuditLog(true, directory.toString(), segmentSize, bufferSize, overflow);
+    }
+
+    private List<AuditRecord> read() throws Exception {
+        List<AuditRecord> records = new ArrayList<>();
+        AuditReader.read(directory, records::add);
+        return records;
+    }
+}
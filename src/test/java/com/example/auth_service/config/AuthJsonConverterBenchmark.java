@@ -0,0 +1,67 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.JwtRequest;
+import com.example.auth_service.api.JwtResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Время и выделенная память на запись {@link JwtResponse} и чтение {@link JwtRequest}:
+ * {@link AuthJsonConverter} против {@link MappingJackson2HttpMessageConverter}.
+ * Строка {@code message only} - стоимость самого тестового сообщения, которую нужно вычесть из записи.
+ * <p>
+ * Запуск:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) com.example.auth_service.config.AuthJsonConverterBenchmark
+ * </pre>
+ * где {@code cp.txt} получен через {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+public class AuthJsonConverterBenchmark {
+
+    private static final int ITERATIONS = 1_000_000;
+    private static final String ACCESS = "eyJhbGciOiJIUzUxMiJ9.eyJzdWIiOiJ1c2VyQG1haWwuY29tIiwiZXhwIjoxNzAwMDAwMDAwLCJy"
+            + "b2xlIjoiVVNFUiJ9.Jm3b4wq7bD9Jv2k1GZpM0Wq9o1Q3pXl0yJqR2s4LrQ8cHkV6sZ0eN1aB7tF5uY3iW2oE9rT4yU6iO8pA1sD3fg";
+    private static final byte[] REQUEST = "{\"login\":\"user@mail.com\",\"password\":\"secret-password\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        HttpMessageConverter<Object> fast = new AuthJsonConverter(objectMapper.getFactory());
+        HttpMessageConverter<Object> jackson = new MappingJackson2HttpMessageConverter(objectMapper);
+        JwtResponse response = new JwtResponse(ACCESS, ACCESS.replace('J', 'K'));
+
+        for (int round = 0; round < 2; round++) {
+            report("message only", () -> new MockHttpOutputMessage().getBody().write(REQUEST));
+            report("jackson write", () -> jackson.write(response, null, new MockHttpOutputMessage()));
+            report("fast write", () -> fast.write(response, null, new MockHttpOutputMessage()));
+            report("jackson read", () -> jackson.read(JwtRequest.class, new MockHttpInputMessage(REQUEST)));
+            report("fast read", () -> fast.read(JwtRequest.class, new MockHttpInputMessage(REQUEST)));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    private static void report(String name, Call call) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("%-14s %8.1f ns/op %8.0f bytes/op%n",
+                name, (double) elapsed / ITERATIONS, (double) allocated / ITERATIONS);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.JwtRequest;
+import com.example.auth_service.api.JwtResponse;
+import com.example.auth_service.api.RefreshJwtRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверка совместимости {@link AuthJsonConverter} с выводом и разбором ObjectMapper.
+ */
+class AuthJsonConverterTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final AuthJsonConverter converter = new AuthJsonConverter(objectMapper.getFactory());
+
+    @Test
+    void writesSameJsonAsObjectMapper() throws Exception {
+        for (JwtResponse response : new JwtResponse[]{
+                new JwtResponse("eyJhbGciOiJIUzUxMiJ9.eyJzdWIiOiJ1In0.sig-_", "eyJ.refresh.token"),
+                new JwtResponse("access", null),
+                new JwtResponse(null, null),
+                new JwtResponse("quote\" slash\\ новый\n", "x")}) {
+            MockHttpOutputMessage output = new MockHttpOutputMessage();
+            converter.write(response, null, output);
+
+            assertThat(output.getBodyAsString(StandardCharsets.UTF_8))
+                    .isEqualTo(objectMapper.writeValueAsString(response));
+            assertThat(output.getHeaders().getContentLength()).isEqualTo(output.getBodyAsBytes().length);
+        }
+    }
+
+    @Test
+    void readsRequestsWithUnknownFieldsAndEscapes() throws Exception {
+        JwtRequest login = (JwtRequest) converter.read(JwtRequest.class,
+                input("{\"extra\":{\"a\":[1,2]},\"password\":\"p\\\"w\",\"login\":\"user@mail.com\"}"));
+        RefreshJwtRequest refresh = (RefreshJwtRequest) converter.read(RefreshJwtRequest.class,
+                input("{\"refreshToken\":\"eyJ.a.b\"}"));
+
+        assertThat(login.getLogin()).isEqualTo("user@mail.com");
+        assertThat(login.getPassword()).isEqualTo("p\"w");
+        assertThat(refresh.getRefreshToken()).isEqualTo("eyJ.a.b");
+    }
+
+    @Test
+    void rejectsMalformedRequests() {
+        assertThatThrownBy(() -> converter.read(JwtRequest.class, input("{\"login\":\"user\"")))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+        assertThatThrownBy(() -> converter.read(JwtRequest.class, input("{\"login\":\"user\",\"password\":null}")))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+        assertThatThrownBy(() -> converter.read(JwtRequest.class, input("[]")))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+    }
+
+    @Test
+    void readsOnlyRequestsAndWritesOnlyResponses() {
+        assertThat(converter.canRead(JwtRequest.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canRead(RefreshJwtRequest.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canRead(JwtResponse.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canWrite(JwtResponse.class, MediaType.APPLICATION_JSON)).isTrue();
+        assertThat(converter.canWrite(JwtRequest.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canWrite(RefreshJwtRequest.class, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canRead(JwtRequest.class, MediaType.APPLICATION_XML)).isFalse();
+    }
+
+    private static MockHttpInputMessage input(String json) {
+        return new MockHttpInputMessage(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.Person;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Размер и стоимость кодирования {@link Person} в JSON и Smile: один пользователь и весь справочник.
+ * Используются те же настройки ObjectMapper, что и в кодеках WebClient.
+ * <p>
+ * Запуск:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *     -Dusers=100000 com.example.auth_service.config.PersonCodecBenchmark
+ * </pre>
+ * где {@code cp.txt} получен через {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+public class PersonCodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("users", 100_000);
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().build();
+
+        List<Person> directory = new ArrayList<>(users);
+        for (long id = 1; id <= users; id++) {
+            directory.add(person(id));
+        }
+        JavaType listType = json.getTypeFactory().constructCollectionType(List.class, Person.class);
+
+        for (ObjectMapper mapper : List.of(json, smile)) {
+            String name = mapper.getFactory() instanceof SmileFactory ? "smile" : "json";
+            report(name + " single", mapper, directory.get(0), mapper.constructType(Person.class), 200_000);
+            report(name + " directory", mapper, directory, listType, Math.max(3, 2_000_000 / users));
+        }
+    }
+
+    private static void report(String name, ObjectMapper mapper, Object value, JavaType type, int iterations)
+            throws Exception {
+        byte[] bytes = mapper.writeValueAsBytes(value);
+        long blackhole = 0;
+        for (int i = 0; i < iterations; i++) {
+            blackhole += mapper.writeValueAsBytes(value).length;
+            blackhole += mapper.readValue(bytes, type).hashCode();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blackhole += mapper.writeValueAsBytes(value).length;
+        }
+        long encode = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blackhole += mapper.readValue(bytes, type).hashCode();
+        }
+        long decode = System.nanoTime() - start;
+        System.out.printf("%-16s %10d bytes, encode %10.1f us, decode %10.1f us (%d)%n",
+                name, bytes.length, encode / 1000.0 / iterations, decode / 1000.0 / iterations, blackhole & 1);
+    }
+
+    private static Person person(long id) {
+        Person person = new Person();
+        person.setId(id);
+        person.setEmail("user" + id + "@mail.com");
+        person.setPassword("password" + id);
+        person.setFirstName("First" + id);
+        person.setLastName("Last" + id);
+        person.setBirthday(LocalDate.of(1990, 1, 1).plusDays(id % 10_000));
+        person.setRole(Role.USER);
+        return person;
+    }
+}
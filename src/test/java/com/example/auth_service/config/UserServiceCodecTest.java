@@ -0,0 +1,91 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.service.PersonService;
+import com.example.auth_service.service.RequestHedger;
+import com.example.auth_service.stub.StubUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка согласования Smile {@link UserServiceCodec} с заглушкой UserService.
+ */
+class UserServiceCodecTest {
+
+    private StubUserService stub;
+    private UserServiceCodec codec;
+    private PersonService personService;
+    private Person user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubUserService();
+        user = stub.addUser("user@mail.com", "secret", Role.USER);
+        codec = new UserServiceCodec("smile");
+        personService = new PersonService(WebClient.builder()
+                .baseUrl(stub.baseUrl())
+                .codecs(codec::configure)
+                .filter(codec)
+                .build(), RequestHedger.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void switchesToSmileAfterFirstSmileResponse() {
+        stub.setSmileSupported(true);
+
+        assertThat(personService.getAll()).extracting(Person::getEmail).containsExactly("user@mail.com");
+        Person created = personService.create(newPerson());
+
+        assertThat(codec.isSmileAccepted()).isTrue();
+        assertThat(created.getBirthday()).isEqualTo(LocalDate.of(2000, 2, 3));
+        assertThat(stub.getUser(created.getId()).getEmail()).isEqualTo("new@mail.com");
+        assertThat(stub.requestCount("SMILE response")).isEqualTo(2);
+        assertThat(stub.requestCount("SMILE request")).isEqualTo(1);
+    }
+
+    @Test
+    void staysOnJsonWhenUserServiceDoesNotSpeakSmile() {
+        assertThat(personService.getUserById(user.getId()).getEmail()).isEqualTo("user@mail.com");
+        Person created = personService.create(newPerson());
+
+        assertThat(codec.isSmileAccepted()).isFalse();
+        assertThat(created.getEmail()).isEqualTo("new@mail.com");
+        assertThat(stub.requestCount("SMILE response")).isZero();
+        assertThat(stub.requestCount("SMILE request")).isZero();
+    }
+
+    @Test
+    void fallsBackToJsonWhenSmileBodyIsRejected() {
+        stub.setSmileSupported(true);
+        personService.getUserById(user.getId());
+        stub.setSmileSupported(false);
+
+        Person created = personService.create(newPerson());
+
+        assertThat(created.getEmail()).isEqualTo("new@mail.com");
+        assertThat(codec.isSmileAccepted()).isFalse();
+        assertThat(stub.requestCount("POST /api")).isEqualTo(1);
+    }
+
+    private static Person newPerson() {
+        Person person = new Person();
+        person.setEmail("new@mail.com");
+        person.setPassword("password");
+        person.setFirstName("New");
+        person.setLastName("Person");
+        person.setBirthday(LocalDate.of(2000, 2, 3));
+        person.setRole(Role.USER);
+        return person;
+    }
+}
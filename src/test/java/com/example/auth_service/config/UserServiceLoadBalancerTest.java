@@ -0,0 +1,123 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.service.PersonService;
+import com.example.auth_service.service.RequestHedger;
+import com.example.auth_service.stub.StubUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка балансировки {@link UserServiceLoadBalancer} на нескольких локальных заглушках UserService.
+ */
+class UserServiceLoadBalancerTest {
+
+    private final List<StubUserService> stubs = new ArrayList<>();
+    private UserServiceLoadBalancer loadBalancer;
+    private WebClient webClient;
+    private PersonService personService;
+    private Person user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            StubUserService stub = new StubUserService();
+            user = stub.addUser("user@mail.com", "secret", Role.USER);
+            stubs.add(stub);
+        }
+        String baseUrl = stubs.stream().map(StubUserService::baseUrl).collect(Collectors.joining(","));
+        loadBalancer = new UserServiceLoadBalancer(baseUrl, 3, Duration.ofSeconds(10));
+        webClient = WebClient.builder()
+                .baseUrl(loadBalancer.primaryUrl())
+                .filter(loadBalancer)
+                .build();
+        personService = new PersonService(webClient, RequestHedger.disabled());
+        // первый запрос прогревает WebClient, чтобы не учитывать его в замерах времени
+        personService.getUserByEmail("user@mail.com");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubs.forEach(StubUserService::close);
+    }
+
+    @Test
+    void spreadsReadsAcrossReplicas() {
+        for (int i = 0; i < 90; i++) {
+            assertThat(personService.getUserById(user.getId()).getEmail()).isEqualTo("user@mail.com");
+        }
+
+        assertThat(stubs).allSatisfy(stub -> assertThat(stub.requestCount("GET /api/id")).isPositive());
+    }
+
+    @Test
+    void retriesReadOnAnotherReplicaAndEjectsFailingOne() {
+        StubUserService failing = stubs.get(0);
+        failing.setFailing(true);
+
+        for (int i = 0; i < 30; i++) {
+            long started = System.nanoTime();
+            assertThat(personService.getUserById(user.getId()).getEmail()).isEqualTo("user@mail.com");
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+        }
+
+        assertThat(failing.requestCount("FAILED")).isBetween(1, 3);
+        assertThat(failing.requestCount("GET /api/id")).isZero();
+    }
+
+    @Test
+    void countsRequestAsOutstandingUntilBodyIsRead() {
+        ClientResponse response = webClient.get().uri("api/all").exchange().block();
+
+        assertThat(loadBalancer.endpoints()).extracting(UserServiceLoadBalancer.Endpoint::outstanding)
+                .containsExactlyInAnyOrder(1, 0, 0);
+
+        response.releaseBody().block();
+
+        assertThat(loadBalancer.endpoints()).extracting(UserServiceLoadBalancer.Endpoint::outstanding)
+                .containsOnly(0);
+    }
+
+    @Test
+    void keepsBasePathOfEachReplica() throws Exception {
+        List<StubUserService> replicas = List.of(new StubUserService("/users-a"), new StubUserService("/users-b"));
+        stubs.addAll(replicas);
+        replicas.forEach(replica -> replica.addUser("user@mail.com", "secret", Role.USER));
+        UserServiceLoadBalancer balancer = new UserServiceLoadBalancer(
+                replicas.stream().map(StubUserService::baseUrl).collect(Collectors.joining(",")), 3, Duration.ofSeconds(10));
+        PersonService service = new PersonService(WebClient.builder()
+                .baseUrl(balancer.primaryUrl())
+                .filter(balancer)
+                .build(), RequestHedger.disabled());
+
+        for (int i = 0; i < 30; i++) {
+            assertThat(service.getUserByEmail("user@mail.com").getEmail()).isEqualTo("user@mail.com");
+        }
+
+        assertThat(replicas).allSatisfy(replica -> assertThat(replica.requestCount("GET /api/email")).isPositive());
+    }
+
+    @Test
+    void skipsReplicaThatIsDown() {
+        stubs.get(2).close();
+
+        for (int i = 0; i < 30; i++) {
+            long started = System.nanoTime();
+            assertThat(personService.getAll()).hasSize(1);
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+        }
+
+        assertThat(stubs.get(0).requestCount("GET /api/all") + stubs.get(1).requestCount("GET /api/all"))
+                .isEqualTo(30);
+    }
+}
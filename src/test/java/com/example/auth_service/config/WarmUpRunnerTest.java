@@ -0,0 +1,121 @@
+package com.example.auth_service.config;
+
+import com.example.auth_service.stub.StubUserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка прогрева на локальной заглушке UserService.
+ */
+class WarmUpRunnerTest {
+
+    private static final String SECRET =
+            "qBTmv4oXFFR2GwjexDJ4t6fsIUIUhhXqlktXjXdkcyygs8nPVEwMfo29VDRRepYDVV5IkIxBMzr7OEHXEHd37w==";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final AtomicInteger authReads = new AtomicInteger();
+    private final AtomicInteger authWrites = new AtomicInteger();
+    private StubUserService stub;
+    private ReadinessGate readinessGate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubUserService();
+        readinessGate = new ReadinessGate();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void holdsReadinessUntilWarmUpFinishes() {
+        WarmUpRunner runner = runner(stub.baseUrl(), true);
+
+        runner.hold();
+        assertThat(readinessGate.isReady()).isFalse();
+        runner.run();
+
+        assertThat(readinessGate.isReady()).isTrue();
+        assertThat(stub.requestCount("GET /api/email")).isEqualTo(4);
+    }
+
+    @Test
+    void warmsUpAuthBodiesThroughRegisteredConverter() {
+        runner(stub.baseUrl(), true).run();
+
+        assertThat(authReads).hasValue(20);
+        assertThat(authWrites).hasValue(10);
+    }
+
+    @Test
+    void releasesReadinessWhenUserServiceIsDown() {
+        stub.close();
+        WarmUpRunner runner = runner(stub.baseUrl(), true);
+
+        runner.hold();
+        runner.run();
+
+        assertThat(readinessGate.isReady()).isTrue();
+    }
+
+    @Test
+    void doesNotHoldReadinessWhenDisabled() {
+        runner(stub.baseUrl(), false).hold();
+
+        assertThat(readinessGate.isReady()).isTrue();
+    }
+
+    private WarmUpRunner runner(String baseUrl, boolean enabled) {
+        return new WarmUpRunner(
+                new JwtProvider(SECRET, SECRET),
+                handlerAdapter(),
+                WebClient.builder().baseUrl(baseUrl).build(),
+                readinessGate,
+                null,
+                enabled,
+                10,
+                4,
+                Duration.ofSeconds(2),
+                false);
+    }
+
+    /**
+     * Конвертеры в том же порядке, что и в {@link WebMvcConfiguration}, со счетчиком вызовов конвертера аутентификации.
+     */
+    private RequestMappingHandlerAdapter handlerAdapter() {
+        RequestMappingHandlerAdapter handlerAdapter = new RequestMappingHandlerAdapter();
+        handlerAdapter.setMessageConverters(List.of(
+                new AuthJsonConverter(objectMapper.getFactory()) {
+                    @Override
+                    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+                        authReads.incrementAndGet();
+                        return super.readInternal(clazz, inputMessage);
+                    }
+
+                    @Override
+                    protected void writeInternal(Object value, HttpOutputMessage outputMessage) throws IOException {
+                        authWrites.incrementAndGet();
+                        super.writeInternal(value, outputMessage);
+                    }
+                },
+                new MappingJackson2HttpMessageConverter(objectMapper)));
+        return handlerAdapter;
+    }
+}
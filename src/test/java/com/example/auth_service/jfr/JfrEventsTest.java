@@ -0,0 +1,96 @@
+package com.example.auth_service.jfr;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.JwtProvider;
+import com.example.auth_service.config.Role;
+import com.example.auth_service.service.PersonService;
+import com.example.auth_service.service.RequestHedger;
+import com.example.auth_service.stub.StubUserService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверка событий JFR: выключены без записи и заполняются при включенной записи.
+ */
+class JfrEventsTest {
+
+    private static final String SECRET =
+            "qBTmv4oXFFR2GwjexDJ4t6fsIUIUhhXqlktXjXdkcyygs8nPVEwMfo29VDRRepYDVV5IkIxBMzr7OEHXEHd37w==";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void eventsAreDisabledByDefault() {
+        assertThat(new TokenEvent().isEnabled()).isFalse();
+        assertThat(new DownstreamCallEvent().isEnabled()).isFalse();
+        assertThat(new AuthPhaseEvent().isEnabled()).isFalse();
+    }
+
+    @Test
+    void recordsTokenIssueAndVerification() throws Exception {
+        JwtProvider jwtProvider = new JwtProvider(SECRET, SECRET);
+        Person person = new Person();
+        person.setEmail("user@mail.com");
+        person.setRole(Role.USER);
+
+        List<RecordedEvent> events = record("auth_service.Token", () -> {
+            String token = jwtProvider.generateAccessToken(person);
+            jwtProvider.validateAccessToken(token);
+            jwtProvider.validateRefreshToken("not.a.token");
+        });
+
+        assertThat(events).extracting(event -> event.getString("tokenType") + " "
+                        + event.getString("operation") + " " + event.getString("outcome"))
+                .containsExactly("access issue ok", "access verify ok", "refresh verify malformed");
+    }
+
+    @Test
+    void recordsDownstreamCallsWithOperationStatusAndAttempt() throws Exception {
+        try (StubUserService stub = new StubUserService()) {
+            Person user = stub.addUser("user@mail.com", "secret", Role.USER);
+            PersonService personService = new PersonService(WebClient.builder()
+                    .baseUrl(stub.baseUrl())
+                    .filter(new DownstreamCallRecorder())
+                    .build(), RequestHedger.disabled());
+
+            List<RecordedEvent> events = record("auth_service.DownstreamCall", () -> {
+                personService.getUserById(user.getId());
+                assertThatThrownBy(() -> personService.getUserById(404)).isNotNull();
+            });
+
+            assertThat(events).extracting(event -> event.getString("operation") + " "
+                            + event.getInt("attempt") + " " + event.getInt("status"))
+                    .containsExactly("getUserById 1 200",
+                            "getUserById 1 404", "getUserById 2 404", "getUserById 3 404", "getUserById 4 404");
+            assertThat(events.get(0).getString("endpoint")).isEqualTo("localhost:" + stub.baseUrl()
+                    .replaceAll("\\D", ""));
+        }
+    }
+
+    private List<RecordedEvent> record(String eventName, Runnable action) throws Exception {
+        Path file = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(eventName);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = new ArrayList<>(RecordingFile.readAllEvents(file));
+        events.sort(Comparator.comparing(RecordedEvent::getStartTime));
+        return events;
+    }
+}
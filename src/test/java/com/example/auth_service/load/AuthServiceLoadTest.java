@@ -0,0 +1,260 @@
+package com.example.auth_service.load;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.Role;
+import com.example.auth_service.stub.StubUserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Нагрузочный тест сервиса на встроенной заглушке UserService.
+ * <p>
+ * Каждый сценарий отправляет запросы с постоянной целевой частотой независимо от ответов (открытая модель),
+ * после прогрева замеряет пропускную способность и p50/p99/p999 и проверяет их по SLO.
+ * Запускается профилем {@code mvn -P load-test test}. Все параметры задаются системными свойствами
+ * {@code -Dload.*}, пороги SLO можно переопределить для отдельного сценария, например {@code load.slo.login.p99}.
+ * С {@code -Dload.bcrypt=true} заглушка хранит пароли хэшами BCrypt стоимости {@code load.bcrypt-cost},
+ * как в рабочем UserService, и вход проходит через пул проверки паролей.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "logging.level.com.example.auth_service=WARN")
+class AuthServiceLoadTest {
+
+    private static final String PASSWORD = "password";
+    private static StubUserService stub;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @LocalServerPort
+    private int port;
+
+    private record Scenario(String name, double rate, Supplier<CompletableFuture<Boolean>> call) {
+    }
+
+    @DynamicPropertySource
+    static void userService(DynamicPropertyRegistry registry) throws IOException {
+        stub = new StubUserService();
+        registry.add("api.base.url", stub::baseUrl);
+    }
+
+    @AfterAll
+    static void stopUserService() {
+        stub.close();
+    }
+
+    @Test
+    void meetsLatencySlo() throws Exception {
+        final String stored = Boolean.getBoolean("load.bcrypt")
+                ? BCrypt.hashpw(PASSWORD, BCrypt.gensalt((int) property("load.bcrypt-cost", 10)))
+                : PASSWORD;
+        final List<Person> users = stub.addUsers((int) property("load.users", 300), stored, Role.USER);
+        final int third = users.size() / 3;
+        final List<Person> loginUsers = users.subList(0, third);
+        final List<String> tokenSessions = new ArrayList<>();
+        final List<String> accessTokens = new ArrayList<>();
+        for (Person person : users.subList(third, 2 * third)) {
+            final JsonNode tokens = login(person.getEmail());
+            tokenSessions.add(tokens.get("refreshToken").asText());
+            accessTokens.add(tokens.get("accessToken").asText());
+        }
+        final Queue<String> refreshSessions = new ConcurrentLinkedQueue<>();
+        for (Person person : users.subList(2 * third, users.size())) {
+            refreshSessions.add(login(person.getEmail()).get("refreshToken").asText());
+        }
+
+        stub.setLatency(Duration.ofMillis((long) property("load.stub.latency-ms", 2)),
+                Duration.ofMillis((long) property("load.stub.jitter-ms", 3)));
+        stub.setErrorRate(property("load.stub.error-rate", 0));
+
+        final List<Scenario> scenarios = List.of(
+                new Scenario("login", property("load.rate.login", 10), () -> {
+                    final Person person = loginUsers.get(ThreadLocalRandom.current().nextInt(loginUsers.size()));
+                    return send(post("api/auth/login", "{\"login\":\"" + person.getEmail()
+                            + "\",\"password\":\"" + PASSWORD + "\"}"))
+                            .thenApply(response -> response.statusCode() == 200);
+                }),
+                new Scenario("token", property("load.rate.token", 20), () -> send(post("api/auth/token",
+                        refreshBody(tokenSessions.get(ThreadLocalRandom.current().nextInt(tokenSessions.size())))))
+                        .thenApply(response -> response.statusCode() == 200 && response.body().contains("\"ey"))),
+                new Scenario("refresh", property("load.rate.refresh", 10), () -> {
+                    final String refreshToken = refreshSessions.poll();
+                    if (refreshToken == null) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return send(post("api/auth/refresh", refreshBody(refreshToken))).thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            return false;
+                        }
+                        refreshSessions.add(read(response.body()).get("refreshToken").asText());
+                        return true;
+                    });
+                }),
+                new Scenario("user-by-id", property("load.rate.user-by-id", 40), () -> {
+                    final Person person = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+                    return send(get("api/" + person.getId(), accessTokens))
+                            .thenApply(response -> response.statusCode() == 200);
+                }),
+                new Scenario("all-users", property("load.rate.all-users", 2), () -> send(get("api/all", accessTokens))
+                        .thenApply(response -> response.statusCode() == 200))
+        );
+
+        run(scenarios, Duration.ofSeconds((long) property("load.warm-up-seconds", 5)), null);
+        final Duration duration = Duration.ofSeconds((long) property("load.duration-seconds", 20));
+        final List<LatencyRecorder> recorders = scenarios.stream()
+                .map(scenario -> new LatencyRecorder(scenario.name()))
+                .toList();
+        final Duration elapsed = run(scenarios, duration, recorders);
+
+        final SoftAssertions softly = new SoftAssertions();
+        System.out.printf("%-12s %9s %7s %9s %9s %9s %9s%n",
+                "scenario", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms");
+        for (int i = 0; i < scenarios.size(); i++) {
+            final Scenario scenario = scenarios.get(i);
+            final LatencyRecorder.Summary summary = recorders.get(i).summary(elapsed);
+            System.out.printf("%-12s %9d %7d %9.1f %9.2f %9.2f %9.2f%n", summary.name(), summary.requests(),
+                    summary.errors(), summary.throughput(), summary.p50Millis(), summary.p99Millis(),
+                    summary.p999Millis());
+            final String name = scenario.name();
+            softly.assertThat(summary.p50Millis()).as(name + " p50").isLessThanOrEqualTo(slo(name, "p50", 50));
+            softly.assertThat(summary.p99Millis()).as(name + " p99").isLessThanOrEqualTo(slo(name, "p99", 250));
+            softly.assertThat(summary.p999Millis()).as(name + " p999").isLessThanOrEqualTo(slo(name, "p999", 500));
+            softly.assertThat(summary.errorRate()).as(name + " error rate")
+                    .isLessThanOrEqualTo(slo(name, "error-rate", 0.01));
+            softly.assertThat(summary.throughput()).as(name + " throughput")
+                    .isGreaterThanOrEqualTo(scenario.rate() * slo(name, "throughput-ratio", 0.95));
+        }
+        softly.assertAll();
+    }
+
+    /**
+     * Запускает все сценарии параллельно на {@code duration} и дожидается ответов на отправленные запросы.
+     *
+     * @param recorders - накопители по сценариям или null, если замеры не нужны.
+     * @return время от начала отправки до последнего ответа, по которому считается пропускная способность.
+     */
+    private Duration run(List<Scenario> scenarios, Duration duration, List<LatencyRecorder> recorders)
+            throws Exception {
+        final ExecutorService drivers = Executors.newFixedThreadPool(scenarios.size());
+        final long started = System.nanoTime();
+        try {
+            final List<Future<List<CompletableFuture<?>>>> sent = new ArrayList<>();
+            for (int i = 0; i < scenarios.size(); i++) {
+                final Scenario scenario = scenarios.get(i);
+                final LatencyRecorder recorder = recorders == null ? null : recorders.get(i);
+                sent.add(drivers.submit(() -> drive(scenario, duration, recorder)));
+            }
+            for (Future<List<CompletableFuture<?>>> calls : sent) {
+                CompletableFuture.allOf(calls.get().toArray(CompletableFuture[]::new))
+                        .exceptionally(error -> null)
+                        .get(1, TimeUnit.MINUTES);
+            }
+            return Duration.ofNanos(System.nanoTime() - started);
+        } finally {
+            drivers.shutdownNow();
+        }
+    }
+
+    private static List<CompletableFuture<?>> drive(Scenario scenario, Duration duration, LatencyRecorder recorder) {
+        final List<CompletableFuture<?>> calls = new ArrayList<>();
+        final long interval = (long) (1e9 / scenario.rate());
+        final long started = System.nanoTime();
+        for (long intended = started; intended - started < duration.toNanos(); intended += interval) {
+            final long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final long scheduled = intended;
+            calls.add(scenario.call().get().whenComplete((success, error) -> {
+                if (recorder != null) {
+                    recorder.record(System.nanoTime() - scheduled, error == null && success);
+                }
+            }));
+        }
+        return calls;
+    }
+
+    private JsonNode login(String email) throws Exception {
+        final HttpResponse<String> response = client.send(
+                post("api/auth/login", "{\"login\":\"" + email + "\",\"password\":\"" + PASSWORD + "\"}"),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login of " + email + " failed with " + response.statusCode());
+        }
+        return read(response.body());
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest get(String path, List<String> accessTokens) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Authorization", "Bearer "
+                        + accessTokens.get(ThreadLocalRandom.current().nextInt(accessTokens.size())))
+                .GET()
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/" + path);
+    }
+
+    private JsonNode read(String body) {
+        try {
+            return mapper.readTree(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected response " + body, e);
+        }
+    }
+
+    private static String refreshBody(String refreshToken) {
+        return "{\"refreshToken\":\"" + refreshToken + "\"}";
+    }
+
+    private static double slo(String scenario, String name, double defaultValue) {
+        return property("load.slo." + scenario + "." + name, property("load.slo." + name, defaultValue));
+    }
+
+    private static double property(String name, double defaultValue) {
+        final String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
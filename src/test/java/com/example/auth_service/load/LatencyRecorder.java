@@ -0,0 +1,54 @@
+package com.example.auth_service.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Накопитель задержек одного сценария нагрузочного теста.
+ * Задержка отсчитывается от запланированного времени отправки, а не от фактического, поэтому
+ * отставание генератора нагрузки не прячет очередь на стороне сервиса.
+ */
+class LatencyRecorder {
+
+    record Summary(String name, long requests, long errors, double throughput,
+                   double p50Millis, double p99Millis, double p999Millis) {
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos, boolean success) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    synchronized Summary summary(Duration elapsed) {
+        final long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Summary(name, count, errors, count / (elapsed.toNanos() / 1e9),
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99), percentileMillis(sorted, 0.999));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
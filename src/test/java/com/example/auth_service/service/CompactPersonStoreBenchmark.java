@@ -0,0 +1,75 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongFunction;
+
+/**
+ * Сравнение {@link CompactPersonStore} с {@code ConcurrentHashMap<String, Person>}: байты на пользователя
+ * и задержка поиска по email.
+ * <p>
+ * Запуск на 10M пользователей (нужно около 8 ГБ кучи для варианта с картой):
+ * <pre>
+ * mvn test-compile
+ * java -Xmx8g -XX:MaxDirectMemorySize=2g -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *     -Dusers=10000000 com.example.auth_service.service.CompactPersonStoreBenchmark
+ * </pre>
+ * где {@code cp.txt} получен через {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}.
+ */
+public class CompactPersonStoreBenchmark {
+
+    private static final int LOOKUPS = 2_000_000;
+
+    public static void main(String[] args) {
+        int users = Integer.getInteger("users", 10_000_000);
+
+        long before = usedHeap();
+        CompactPersonStore store = new CompactPersonStore();
+        for (long id = 0; id < users; id++) {
+            store.put(CompactPersonStoreTest.person(id, email(id)));
+        }
+        long compactHeap = usedHeap() - before;
+        System.out.printf("compact: %d users, %.1f bytes/user off-heap, %.1f bytes/user heap%n",
+                users, (double) store.footprintBytes() / users, (double) compactHeap / users);
+        report("compact", users, id -> store.findByEmail(email(id)));
+
+        before = usedHeap();
+        Map<String, Person> map = new ConcurrentHashMap<>();
+        for (long id = 0; id < users; id++) {
+            Person person = CompactPersonStoreTest.person(id, email(id));
+            map.put(person.getEmail(), person);
+        }
+        long mapHeap = usedHeap() - before;
+        System.out.printf("map: %d users, %.1f bytes/user heap%n", users, (double) mapHeap / users);
+        report("map", users, id -> map.get(email(id)));
+    }
+
+    private static void report(String name, int users, LongFunction<Person> lookup) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long blackhole = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole += lookup.apply(random.nextLong(users)).getId();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole += lookup.apply(random.nextLong(users)).getId();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%s: %.0f ns/lookup (checksum %d)%n", name, (double) elapsed / LOOKUPS, blackhole);
+    }
+
+    private static String email(long id) {
+        return "user" + id + "@mail.com";
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.Role;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactPersonStoreTest {
+
+    @Test
+    void roundTripsAllFields() {
+        CompactPersonStore store = new CompactPersonStore(1024);
+        Person person = person(7L, "юзер@mail.com");
+        person.setLastName(null);
+
+        store.put(person);
+
+        assertThat(store.findByEmail("юзер@mail.com")).isEqualTo(person);
+        assertThat(store.findById(7L)).isEqualTo(person);
+        assertThat(store.findByEmail("other@mail.com")).isNull();
+        assertThat(store.findById(8L)).isNull();
+    }
+
+    @Test
+    void replacesRecordWhenEmailChanges() {
+        CompactPersonStore store = new CompactPersonStore(1024);
+        store.put(person(1L, "old@mail.com"));
+
+        Person updated = person(1L, "new@mail.com");
+        store.put(updated);
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.findByEmail("old@mail.com")).isNull();
+        assertThat(store.findByEmail("new@mail.com")).isEqualTo(updated);
+        assertThat(store.garbageBytes()).isPositive();
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        CompactPersonStore store = new CompactPersonStore(4096);
+        Map<Long, Person> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long id = random.nextInt(2_000);
+            if (random.nextInt(4) == 0) {
+                store.remove(id);
+                expected.remove(id);
+            } else {
+                Person person = person(id, "user" + id + "-" + random.nextInt(3) + "@mail.com");
+                store.put(person);
+                expected.put(id, person);
+            }
+        }
+
+        assertThat(store.size()).isEqualTo(expected.size());
+        assertThat(store.ids()).containsExactlyInAnyOrder(expected.keySet().stream().mapToLong(Long::longValue).toArray());
+        for (Person person : expected.values()) {
+            assertThat(store.findById(person.getId())).isEqualTo(person);
+            assertThat(store.findByEmail(person.getEmail())).isEqualTo(person);
+        }
+    }
+
+    @Test
+    void compactsGarbageIntoFreshSlabs() {
+        CompactPersonStore store = new CompactPersonStore(1024);
+        for (long id = 0; id < 20; id++) {
+            store.put(person(id, "user" + id + "@mail.com"));
+        }
+        long footprint = store.footprintBytes();
+
+        for (int round = 0; round < 200; round++) {
+            for (long id = 0; id < 20; id++) {
+                Person person = person(id, "user" + id + "@mail.com");
+                person.setFirstName("First" + round);
+                store.put(person);
+            }
+        }
+
+        assertThat(store.footprintBytes()).isLessThanOrEqualTo(footprint * 3);
+        assertThat(store.garbageBytes()).isLessThan(footprint * 2);
+        for (long id = 0; id < 20; id++) {
+            assertThat(store.findByEmail("user" + id + "@mail.com").getFirstName()).isEqualTo("First199");
+            assertThat(store.findById(id).getEmail()).isEqualTo("user" + id + "@mail.com");
+        }
+
+        store.remove(3L);
+        store.compact();
+        assertThat(store.garbageBytes()).isZero();
+        assertThat(store.size()).isEqualTo(19);
+        assertThat(store.findByEmail("user3@mail.com")).isNull();
+        assertThat(store.findByEmail("user4@mail.com").getId()).isEqualTo(4L);
+    }
+
+    @Test
+    void storesContentHashWithRecord() {
+        CompactPersonStore store = new CompactPersonStore(1024);
+        Person person = person(5L, "user5@mail.com");
+        store.put(person);
+
+        assertThat(store.contentHash(5L)).isEqualTo(Hashes.hash(person));
+        assertThat(store.contentHash(6L)).isNull();
+
+        person.setRole(Role.ADMIN);
+        assertThat(store.contentHash(5L)).isNotEqualTo(Hashes.hash(person));
+    }
+
+    static Person person(long id, String email) {
+        Person person = new Person();
+        person.setId(id);
+        person.setEmail(email);
+        person.setPassword("password" + id);
+        person.setFirstName("First" + id);
+        person.setLastName("Last" + id);
+        person.setBirthday(LocalDate.of(1990, 1, 1).plusDays(id % 10_000));
+        person.setRole(id % 10 == 0 ? Role.ADMIN : Role.USER);
+        return person;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.exceptions.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordVerifierTest {
+
+    private static final String HASH = BCrypt.hashpw("secret", BCrypt.gensalt(PasswordVerifier.MIN_COST));
+
+    private PasswordVerifier verifier;
+
+    @AfterEach
+    void tearDown() {
+        verifier.stop();
+    }
+
+    @Test
+    void cachesOnlySuccessfulVerifications() {
+        verifier = verifier(1, 8, Duration.ofMinutes(1));
+
+        assertThat(verifier.matches("user@mail.com", "secret", HASH)).isTrue();
+        assertThat(verifier.matches("user@mail.com", "secret", HASH)).isTrue();
+        assertThat(verifier.hashed()).isEqualTo(1);
+
+        assertThat(verifier.matches("user@mail.com", "wrong", HASH)).isFalse();
+        assertThat(verifier.matches("user@mail.com", "wrong", HASH)).isFalse();
+        assertThat(verifier.hashed()).isEqualTo(3);
+
+        String changed = BCrypt.hashpw("secret", BCrypt.gensalt(PasswordVerifier.MIN_COST));
+        assertThat(verifier.matches("user@mail.com", "secret", changed)).isTrue();
+        assertThat(verifier.hashed()).isEqualTo(4);
+    }
+
+    @Test
+    void comparesPlainPasswordsWithoutHashing() {
+        verifier = verifier(1, 8, Duration.ofMinutes(1));
+
+        assertThat(verifier.matches("user@mail.com", "secret", "secret")).isTrue();
+        assertThat(verifier.matches("user@mail.com", "secre", "secret")).isFalse();
+        assertThat(verifier.matches("user@mail.com", null, "secret")).isFalse();
+        assertThat(verifier.hashed()).isZero();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        verifier = verifier(1, 1, Duration.ZERO);
+        String slow = BCrypt.hashpw("secret", BCrypt.gensalt(12));
+        List<CompletableFuture<Boolean>> logins = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            logins.add(CompletableFuture.supplyAsync(() -> verifier.matches("user@mail.com", "secret", slow)));
+        }
+
+        assertThatThrownBy(() -> CompletableFuture.allOf(logins.toArray(CompletableFuture[]::new)).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void calibratesCostToTargetLatency() {
+        verifier = verifier(1, 8, Duration.ofMinutes(1));
+
+        verifier.calibrate();
+
+        assertThat(verifier.cost()).isBetween(PasswordVerifier.MIN_COST, PasswordVerifier.MAX_COST);
+        assertThat(BCrypt.checkpw("secret", verifier.encode("secret"))).isTrue();
+    }
+
+    @Test
+    void dropsOldestGenerationWhenCacheIsFull() {
+        verifier = new PasswordVerifier(1, 8, Duration.ofSeconds(10), Duration.ofMillis(20), Duration.ofMinutes(1),
+                2, false);
+
+        for (String login : List.of("first@mail.com", "second@mail.com", "third@mail.com")) {
+            assertThat(verifier.matches(login, "secret", HASH)).isTrue();
+        }
+        assertThat(verifier.matches("third@mail.com", "secret", HASH)).isTrue();
+        assertThat(verifier.matches("second@mail.com", "secret", HASH)).isTrue();
+        assertThat(verifier.hashed()).isEqualTo(3);
+
+        assertThat(verifier.matches("first@mail.com", "secret", HASH)).isTrue();
+        assertThat(verifier.hashed()).isEqualTo(4);
+    }
+
+    @Test
+    void hashesBatchOnPool() {
+        verifier = new PasswordVerifier(2, 8, Duration.ofSeconds(10), Duration.ofMillis(20), Duration.ofMinutes(1),
+                100, true);
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Person person = new Person();
+            person.setPassword(i == 0 ? HASH : "secret" + i);
+            people.add(person);
+        }
+
+        verifier.hashPasswords(people);
+
+        assertThat(people.get(0).getPassword()).isEqualTo(HASH);
+        for (int i = 1; i < 10; i++) {
+            assertThat(BCrypt.checkpw("secret" + i, people.get(i).getPassword())).isTrue();
+        }
+        assertThat(verifier.hashed()).isEqualTo(9);
+    }
+
+    private static PasswordVerifier verifier(int threads, int queue, Duration cacheTtl) {
+        return new PasswordVerifier(threads, queue, Duration.ofSeconds(10), Duration.ofMillis(20), cacheTtl,
+                100, false);
+    }
+}
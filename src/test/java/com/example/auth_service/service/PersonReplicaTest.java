@@ -0,0 +1,133 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.ReadinessGate;
+import com.example.auth_service.config.Role;
+import com.example.auth_service.stub.StubUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка режима реплики на локальной заглушке UserService.
+ */
+class PersonReplicaTest {
+
+    private StubUserService stub;
+    private PersonService personService;
+    private ReadinessGate readinessGate;
+    private PersonReplica replica;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubUserService();
+        stub.addUser("first@mail.com", "1", Role.USER);
+        stub.addUser("second@mail.com", "2", Role.ADMIN);
+        personService = new PersonService(WebClient.builder().baseUrl(stub.baseUrl()).build(), RequestHedger.disabled());
+        readinessGate = new ReadinessGate();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (replica != null) {
+            replica.stop();
+        }
+        stub.close();
+    }
+
+    @Test
+    void servesLookupsLocallyAfterWarmUp() throws Exception {
+        replica = new PersonReplica(personService, readinessGate, true, Duration.ofMillis(100), Duration.ofSeconds(5), "heap");
+        replica.start();
+        awaitReady();
+
+        Person person = replica.getUserByEmail("second@mail.com");
+
+        assertThat(person.getRole()).isEqualTo(Role.ADMIN);
+        assertThat(replica.getUserById(person.getId()).getEmail()).isEqualTo("second@mail.com");
+        assertThat(stub.requestCount("GET /api/email")).isZero();
+        assertThat(stub.requestCount("GET /api/id")).isZero();
+    }
+
+    @Test
+    void appliesChangesFromPeriodicSync() throws Exception {
+        replica = new PersonReplica(personService, readinessGate, true, Duration.ofMillis(100), Duration.ofSeconds(5), "heap");
+        replica.start();
+        awaitReady();
+
+        Person added = stub.addUser("third@mail.com", "3", Role.USER);
+        stub.removeUser(1L);
+        int syncs = stub.requestCount("GET /api/all");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stub.requestCount("GET /api/all") < syncs + 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertThat(replica.size()).isEqualTo(2);
+        assertThat(replica.getUserByEmail("third@mail.com").getId()).isEqualTo(added.getId());
+        assertThat(stub.requestCount("GET /api/email")).isZero();
+    }
+
+    @Test
+    void appliesChangedFieldsOnCompactStorage() throws Exception {
+        replica = new PersonReplica(personService, readinessGate, true, Duration.ofHours(1), Duration.ofSeconds(5), "compact");
+        readinessGate.hold(PersonReplica.READINESS_HOLD);
+        replica.sync();
+
+        stub.getUser(1L).setRole(Role.ADMIN);
+        replica.sync();
+
+        assertThat(replica.size()).isEqualTo(2);
+        assertThat(replica.getUserByEmail("first@mail.com").getRole()).isEqualTo(Role.ADMIN);
+        assertThat(stub.requestCount("GET /api/email")).isZero();
+    }
+
+    @Test
+    void fallsBackToLiveCallWhenStale() throws Exception {
+        replica = new PersonReplica(personService, readinessGate, true, Duration.ofHours(1), Duration.ofMillis(50), "heap");
+        replica.start();
+        awaitReady();
+        Thread.sleep(100);
+
+        assertThat(replica.isServing()).isFalse();
+        assertThat(replica.getUserByEmail("first@mail.com").getPassword()).isEqualTo("1");
+        assertThat(stub.requestCount("GET /api/email")).isEqualTo(1);
+    }
+
+    @Test
+    void fallsBackToLiveCallOnMiss() throws Exception {
+        replica = new PersonReplica(personService, readinessGate, true, Duration.ofHours(1), Duration.ofSeconds(5), "heap");
+        replica.start();
+        awaitReady();
+
+        stub.addUser("late@mail.com", "4", Role.USER);
+
+        assertThat(replica.getUserByEmail("late@mail.com").getPassword()).isEqualTo("4");
+        assertThat(replica.getUserByEmail("late@mail.com").getPassword()).isEqualTo("4");
+        assertThat(stub.requestCount("GET /api/email")).isEqualTo(1);
+    }
+
+    @Test
+    void holdsReadinessUntilFirstLoad() {
+        replica = new PersonReplica(personService, readinessGate, true, Duration.ofHours(1), Duration.ofSeconds(5), "heap");
+        readinessGate.hold(PersonReplica.READINESS_HOLD);
+
+        assertThat(readinessGate.isReady()).isFalse();
+        replica.sync();
+        assertThat(readinessGate.isReady()).isTrue();
+        assertThat(replica.size()).isEqualTo(2);
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!readinessGate.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(readinessGate.isReady()).isTrue();
+    }
+}
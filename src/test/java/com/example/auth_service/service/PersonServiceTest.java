@@ -0,0 +1,215 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.BatchResult;
+import com.example.auth_service.api.Person;
+import com.example.auth_service.api.RoleChange;
+import com.example.auth_service.config.Role;
+import com.example.auth_service.exceptions.PreconditionFailedException;
+import com.example.auth_service.exceptions.ValidationException;
+import com.example.auth_service.stub.StubUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверка запросов {@link PersonService} на локальной заглушке UserService.
+ */
+class PersonServiceTest {
+
+    private StubUserService stub;
+    private PersonService personService;
+    private Person user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubUserService();
+        user = stub.addUser("user@mail.com", "secret", Role.USER);
+        personService = new PersonService(WebClient.builder().baseUrl(stub.baseUrl()).build(), RequestHedger.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void patchSendsOnlyChangedFieldsInOneRequest() {
+        stub.setPatchSupported(true);
+
+        ResponseEntity<Person> response = personService.patch(user.getId(), changes("Renamed"), null);
+
+        assertThat(response.getBody().getFirstName()).isEqualTo("Renamed");
+        assertThat(response.getBody().getEmail()).isEqualTo("user@mail.com");
+        assertThat(response.getHeaders().getETag()).isEqualTo(stub.etag(user.getId()));
+        assertThat(stub.requestCount("PATCH /api/id")).isEqualTo(1);
+        assertThat(stub.requestCount("GET /api/id")).isZero();
+        assertThat(stub.requestCount("PUT /api")).isZero();
+    }
+
+    @Test
+    void patchForwardsIfMatchInSingleConditionalRequest() {
+        stub.setPatchSupported(true);
+        String etag = personService.getVersionedUserById(user.getId()).getHeaders().getETag();
+        assertThat(etag).isEqualTo(stub.etag(user.getId()));
+
+        ResponseEntity<Person> response = personService.patch(user.getId(), changes("Renamed"), etag);
+
+        assertThat(response.getBody().getFirstName()).isEqualTo("Renamed");
+        assertThat(response.getHeaders().getETag()).isEqualTo(stub.etag(user.getId()));
+        assertThat(stub.requestCount("GET /api/id")).isEqualTo(1);
+        assertThat(stub.requestCount("PATCH /api/id")).isEqualTo(1);
+    }
+
+    @Test
+    void patchOfMissingUserKeepsPatchEnabled() {
+        stub.setPatchSupported(true);
+
+        assertThatThrownBy(() -> personService.patch(-1, changes("Nobody"), null))
+                .isInstanceOf(ValidationException.class);
+        personService.patch(user.getId(), changes("Renamed"), null);
+
+        assertThat(stub.requestCount("PATCH /api/id")).isEqualTo(2);
+        assertThat(stub.requestCount("PUT /api")).isZero();
+    }
+
+    @Test
+    void patchRejectsStaleVersion() {
+        stub.setPatchSupported(true);
+        String staleEtag = stub.etag(user.getId());
+        personService.patch(user.getId(), changes("First"), staleEtag);
+
+        assertThatThrownBy(() -> personService.patch(user.getId(), changes("Second"), staleEtag))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThat(stub.getUser(user.getId()).getFirstName()).isEqualTo("First");
+    }
+
+    @Test
+    void fallsBackToReadAndPutWhenPatchIsUnsupported() {
+        ResponseEntity<Person> first = personService.patch(user.getId(), changes("Renamed"), stub.etag(user.getId()));
+        ResponseEntity<Person> second = personService.patch(user.getId(), changes("Again"), first.getHeaders().getETag());
+
+        assertThat(stub.getUser(user.getId()).getFirstName()).isEqualTo("Again");
+        assertThat(second.getHeaders().getETag()).isEqualTo(stub.etag(user.getId()));
+        assertThat(stub.requestCount("PATCH /api/id")).isEqualTo(1);
+        assertThat(stub.requestCount("GET /api/id")).isEqualTo(2);
+        assertThat(stub.requestCount("PUT /api")).isEqualTo(2);
+    }
+
+    @Test
+    void fallbackChecksVersionBeforePut() {
+        assertThatThrownBy(() -> personService.patch(user.getId(), changes("Renamed"), "\"stale\""))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThat(stub.requestCount("PUT /api")).isZero();
+    }
+
+    @Test
+    void updatesRolesInBatch() {
+        List<RoleChange> changes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Person person = stub.addUser("batch" + i + "@mail.com", "secret", Role.USER);
+            RoleChange change = new RoleChange();
+            change.setId(person.getId());
+            change.setRole(Role.ADMIN);
+            changes.add(change);
+        }
+        RoleChange missing = new RoleChange();
+        missing.setId(-1L);
+        missing.setRole(Role.ADMIN);
+        changes.add(missing);
+
+        List<BatchResult> results = personService.updateRoles(changes).collectList().block();
+
+        assertThat(results).hasSize(501);
+        assertThat(results).filteredOn(result -> result.getError() == null).hasSize(500)
+                .allMatch(result -> result.getPerson().getRole() == Role.ADMIN);
+        assertThat(results).filteredOn(result -> result.getError() != null)
+                .extracting(BatchResult::getIndex).containsExactly(500);
+    }
+
+    @Test
+    void rejectsWholeBatchBeforeAnyRequest() {
+        Person valid = new Person();
+        valid.setEmail("new@mail.com");
+        valid.setPassword("secret");
+        valid.setFirstName("New");
+        valid.setLastName("User");
+        valid.setBirthday(LocalDate.of(2000, 1, 1));
+        Person invalid = new Person();
+        invalid.setEmail("not-an-email");
+
+        assertThatThrownBy(() -> personService.createAll(List.of(valid, invalid)))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("item 1");
+        assertThat(stub.requestCount("POST /api")).isZero();
+
+        List<BatchResult> results = personService.createAll(List.of(valid)).collectList().block();
+        assertThat(results).singleElement().extracting(result -> result.getPerson().getEmail()).isEqualTo("new@mail.com");
+    }
+
+    @Test
+    void reportsMissingFieldsAsValidationErrors() {
+        Person incomplete = newPerson("incomplete@mail.com");
+        incomplete.setBirthday(null);
+        RoleChange change = new RoleChange();
+        change.setId(user.getId());
+
+        assertThatThrownBy(() -> personService.createAll(List.of(incomplete)))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("item 0: User Birthday is missing");
+        assertThatThrownBy(() -> personService.updateRoles(List.of(change)))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("item 0");
+    }
+
+    @Test
+    void rejectsInvalidUpdateBeforeAnyRequest() {
+        stub.setPatchSupported(true);
+        Person invalidEmail = changes("Renamed");
+        invalidEmail.setEmail("not-an-email");
+
+        assertThatThrownBy(() -> personService.patch(user.getId(), invalidEmail, null))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> personService.patch(user.getId(), changes(""), null))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("no changes");
+        assertThat(stub.requestCount("PATCH /api/id")).isZero();
+    }
+
+    @Test
+    void doesNotRetryCreateOnServerError() {
+        stub.setFailing(true);
+
+        List<BatchResult> results = personService.createAll(List.of(newPerson("new@mail.com"))).collectList().block();
+
+        assertThat(results).singleElement().extracting(BatchResult::getError).isNotNull();
+        assertThat(stub.requestCount("FAILED")).isEqualTo(1);
+    }
+
+    private static Person newPerson(String email) {
+        Person person = new Person();
+        person.setEmail(email);
+        person.setPassword("secret");
+        person.setFirstName("New");
+        person.setLastName("User");
+        person.setBirthday(LocalDate.of(2000, 1, 1));
+        return person;
+    }
+
+    private static Person changes(String firstName) {
+        Person changes = new Person();
+        changes.setFirstName(firstName);
+        changes.setLastName("");
+        changes.setEmail("");
+        changes.setPassword("");
+        return changes;
+    }
+}
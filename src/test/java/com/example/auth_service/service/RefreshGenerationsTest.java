@@ -0,0 +1,61 @@
+package com.example.auth_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshGenerationsTest {
+
+    @Test
+    void advancesOnlyFromCurrentGeneration() {
+        RefreshGenerations generations = new RefreshGenerations();
+        long key = RefreshGenerations.keyOf("user@mail.com");
+
+        assertThat(generations.get(key)).isZero();
+        assertThat(generations.advance(key)).isEqualTo(1);
+        assertThat(generations.advance(key, 1)).isEqualTo(2);
+        assertThat(generations.advance(key, 1)).isZero();
+        assertThat(generations.get(key)).isEqualTo(2);
+    }
+
+    @Test
+    void revokeMakesPreviousGenerationStale() {
+        RefreshGenerations generations = new RefreshGenerations();
+        long key = RefreshGenerations.keyOf("user@mail.com");
+        int issued = generations.advance(key);
+
+        generations.advance(key);
+
+        assertThat(generations.get(key)).isNotEqualTo(issued);
+        assertThat(generations.advance(key, issued)).isZero();
+    }
+
+    @Test
+    void revokeSkipsUnknownUsers() {
+        RefreshGenerations generations = new RefreshGenerations();
+        long known = RefreshGenerations.keyOf("user@mail.com");
+        int issued = generations.advance(known);
+
+        assertThat(generations.revoke(RefreshGenerations.keyOf("never@mail.com"))).isZero();
+        assertThat(generations.size()).isEqualTo(1);
+        assertThat(generations.revoke(known)).isNotEqualTo(issued);
+        assertThat(generations.advance(known, issued)).isZero();
+    }
+
+    @Test
+    void keepsGenerationsAcrossResize() {
+        RefreshGenerations generations = new RefreshGenerations();
+        for (int i = 0; i < 100_000; i++) {
+            long key = RefreshGenerations.keyOf("user" + i + "@mail.com");
+            generations.advance(key);
+            if (i % 2 == 0) {
+                generations.advance(key);
+            }
+        }
+
+        assertThat(generations.size()).isEqualTo(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(generations.get(RefreshGenerations.keyOf("user" + i + "@mail.com"))).isEqualTo(i % 2 == 0 ? 2 : 1);
+        }
+    }
+}
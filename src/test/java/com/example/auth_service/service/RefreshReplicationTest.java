@@ -0,0 +1,222 @@
+package com.example.auth_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверка репликации refresh токенов между несколькими узлами на localhost.
+ */
+class RefreshReplicationTest {
+
+    private static final String SECRET = "replication-secret-for-tests";
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(node -> node.replication.stop());
+    }
+
+    @Test
+    void replicatesTokensBetweenNodes() throws Exception {
+        Node first = start();
+        Node second = start();
+        Node third = start();
+        mesh();
+
+        first.storage.put("user@mail.com", "token-1");
+
+        await(() -> "token-1".equals(second.storage.get("user@mail.com"))
+                && "token-1".equals(third.storage.get("user@mail.com")));
+
+        third.storage.remove("user@mail.com");
+
+        await(() -> first.storage.get("user@mail.com") == null && second.storage.get("user@mail.com") == null);
+    }
+
+    @Test
+    void convergesOnLastWriterAfterConcurrentWrites() throws Exception {
+        Node first = start();
+        Node second = start();
+        mesh();
+
+        for (int i = 0; i < 1000; i++) {
+            first.storage.put("user" + (i % 10) + "@mail.com", "first-" + i);
+            second.storage.put("user" + (i % 10) + "@mail.com", "second-" + i);
+        }
+
+        await(() -> {
+            for (int i = 0; i < 10; i++) {
+                String login = "user" + i + "@mail.com";
+                if (!first.storage.get(login).equals(second.storage.get(login))) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    @Test
+    void joiningNodeCatchesUpWithSnapshot() throws Exception {
+        Node first = start();
+        first.storage.put("early@mail.com", "token-early");
+        long key = RefreshGenerations.keyOf("early@mail.com");
+        first.generations.advance(key);
+        first.generations.advance(key);
+
+        Node late = start();
+        mesh();
+
+        await(() -> "token-early".equals(late.storage.get("early@mail.com"))
+                && late.generations.get(key) == 2);
+
+        late.generations.advance(key);
+
+        await(() -> first.generations.get(key) == 3);
+    }
+
+    @Test
+    void ignoresPeerWithWrongSecret() throws Exception {
+        Node first = start();
+        Node intruder = start("another-secret-value");
+        intruder.replication.connect(new InetSocketAddress("localhost", first.replication.localPort()));
+
+        intruder.storage.put("user@mail.com", "forged");
+        first.storage.put("other@mail.com", "token");
+        Thread.sleep(500);
+
+        assertThat(first.storage.get("user@mail.com")).isNull();
+        assertThat(intruder.storage.get("other@mail.com")).isNull();
+    }
+
+    @Test
+    void sendsNothingToListenerWithoutSecret() throws Exception {
+        Node first = start();
+        first.storage.put("user@mail.com", "token-1");
+
+        try (ServerSocket impostor = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            first.replication.connect(new InetSocketAddress("localhost", impostor.getLocalPort()));
+            try (Socket socket = impostor.accept()) {
+                socket.setSoTimeout(1000);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                byte[] hello = new byte[1 + 4 + 32];
+                in.readFully(hello);
+                byte[] forged = new byte[64];
+                new Random().nextBytes(forged);
+                socket.getOutputStream().write(forged);
+                socket.getOutputStream().flush();
+
+                int received = 0;
+                try {
+                    while (in.read() >= 0) {
+                        received++;
+                    }
+                } catch (SocketTimeoutException e) {
+                    // соединение не закрыто, но данных тоже нет
+                }
+                assertThat(received).isZero();
+            }
+        }
+    }
+
+    @Test
+    void syncsBackToNodeThatOnlyItKnows() throws Exception {
+        Node first = start();
+        first.storage.put("early@mail.com", "token-early");
+        long key = RefreshGenerations.keyOf("early@mail.com");
+        first.generations.advance(key);
+
+        Node late = start();
+        late.replication.connect(new InetSocketAddress("localhost", first.replication.localPort()));
+
+        await(() -> "token-early".equals(late.storage.get("early@mail.com"))
+                && late.generations.get(key) == 1);
+
+        first.storage.put("later@mail.com", "token-later");
+
+        await(() -> "token-later".equals(late.storage.get("later@mail.com")));
+    }
+
+    @Test
+    void dropsRecordsFromTheFuture() throws Exception {
+        Node first = start();
+        Node second = start();
+        first.storage.merge(new RefreshStorage.Entry("user@mail.com", "forged", Long.MAX_VALUE, "origin"));
+        first.storage.put("other@mail.com", "token");
+        mesh();
+
+        await(() -> "token".equals(second.storage.get("other@mail.com")));
+        assertThat(second.storage.get("user@mail.com")).isNull();
+    }
+
+    @Test
+    void rejectsMalformedPeers() {
+        assertThatThrownBy(() -> RefreshReplication.parsePeers("localhost:7701, node-2"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("node-2");
+        assertThat(RefreshReplication.parsePeers(" node-1:7701 ,node-2:7702")).hasSize(2);
+    }
+
+    @Test
+    void purgesExpiredTombstones() {
+        RefreshStorage storage = new RefreshStorage(Duration.ofMinutes(1));
+        storage.put("active@mail.com", "token");
+        storage.remove("revoked@mail.com");
+
+        assertThat(storage.purgeTombstones(System.currentTimeMillis())).isZero();
+        assertThat(storage.purgeTombstones(System.currentTimeMillis() + Duration.ofMinutes(2).toMillis()))
+                .isEqualTo(1);
+        assertThat(storage.size()).isEqualTo(1);
+    }
+
+    private Node start() throws Exception {
+        return start(SECRET);
+    }
+
+    private Node start(String secret) throws Exception {
+        RefreshStorage storage = new RefreshStorage();
+        RefreshGenerations generations = new RefreshGenerations();
+        RefreshReplication replication = new RefreshReplication(
+                storage, generations, true, "127.0.0.1", 0, "", secret, Duration.ofSeconds(30));
+        replication.start();
+        Node node = new Node(storage, generations, replication);
+        nodes.add(node);
+        return node;
+    }
+
+    private void mesh() {
+        for (Node from : nodes) {
+            for (Node to : nodes) {
+                if (from != to) {
+                    from.replication.connect(new InetSocketAddress("localhost", to.replication.localPort()));
+                }
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private record Node(RefreshStorage storage, RefreshGenerations generations, RefreshReplication replication) {
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.Role;
+import com.example.auth_service.stub.StubUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка дублирования чтений {@link RequestHedger} на заглушке UserService с медленными ответами.
+ */
+class RequestHedgerTest {
+
+    private StubUserService stub;
+    private Person user;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubUserService();
+        user = stub.addUser("user@mail.com", "secret", Role.USER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void hedgedRequestAnswersInsteadOfSlowOne() {
+        RequestHedger hedger = new RequestHedger(true, 0.95, Duration.ofMillis(5), 1.0);
+        PersonService personService = personService(hedger);
+        warmUp(personService);
+        stub.setSlowRequests(2, Duration.ofMillis(800));
+
+        for (int i = 0; i < 10; i++) {
+            long started = System.nanoTime();
+            assertThat(personService.getUserByEmail("user@mail.com").getId()).isEqualTo(user.getId());
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofMillis(500));
+        }
+
+        RequestHedger.Stats stats = hedger.stats().get("getUserByEmail");
+        assertThat(stats.hedges()).isPositive();
+        assertThat(stats.wins()).isPositive().isLessThanOrEqualTo(stats.hedges());
+    }
+
+    @Test
+    void budgetCapsExtraRequests() {
+        RequestHedger hedger = new RequestHedger(true, 0.5, Duration.ofMillis(1), 0.1);
+        PersonService personService = personService(hedger);
+        warmUp(personService);
+        stub.setSlowRequests(1, Duration.ofMillis(20));
+
+        for (int i = 0; i < 100; i++) {
+            personService.getUserById(user.getId());
+        }
+
+        long requests = hedger.stats().values().stream().mapToLong(RequestHedger.Stats::requests).sum();
+        long hedges = hedger.stats().values().stream().mapToLong(RequestHedger.Stats::hedges).sum();
+        assertThat(hedges).isPositive().isLessThanOrEqualTo(requests / 10);
+    }
+
+    @Test
+    void doesNotHedgeFullListing() {
+        RequestHedger hedger = new RequestHedger(true, 0.5, Duration.ofMillis(1), 1.0);
+        PersonService personService = personService(hedger);
+        warmUp(personService);
+        stub.setSlowRequests(1, Duration.ofMillis(20));
+
+        for (int i = 0; i < LatencyTracker.RECOMPUTE_EVERY * 2; i++) {
+            assertThat(personService.getAll()).hasSize(1);
+        }
+
+        assertThat(hedger.stats()).doesNotContainKey("getAll");
+        assertThat(stub.requestCount("GET /api/all")).isEqualTo(LatencyTracker.RECOMPUTE_EVERY * 2);
+    }
+
+    private PersonService personService(RequestHedger hedger) {
+        return new PersonService(WebClient.builder().baseUrl(stub.baseUrl()).build(), hedger);
+    }
+
+    private void warmUp(PersonService personService) {
+        for (int i = 0; i < LatencyTracker.RECOMPUTE_EVERY; i++) {
+            personService.getUserByEmail("user@mail.com");
+            personService.getUserById(user.getId());
+        }
+    }
+}
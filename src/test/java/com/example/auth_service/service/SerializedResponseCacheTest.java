@@ -0,0 +1,135 @@
+package com.example.auth_service.service;
+
+import com.example.auth_service.api.Person;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SerializedResponseCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void servesSameBytesUntilTtlExpires() throws Exception {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMillis(100), 100);
+
+        SerializedResponseCache.Cached first = cache.get("all", this::load);
+        SerializedResponseCache.Cached second = cache.get("all", this::load);
+        Thread.sleep(150);
+        SerializedResponseCache.Cached third = cache.get("all", this::load);
+
+        assertThat(second.body()).isSameAs(first.body());
+        assertThat(third.body()).isNotSameAs(first.body());
+        assertThat(third.etag()).isEqualTo(first.etag());
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void reloadsAfterInvalidate() {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMinutes(1), 100);
+
+        cache.get("all", this::load);
+        cache.invalidate("all");
+        cache.get("all", this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void sweepsExpiredEntriesOfOtherKeys() throws Exception {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMillis(50), 100);
+        for (int i = 0; i < 10; i++) {
+            cache.get("id:" + i, this::load);
+        }
+        Thread.sleep(120);
+
+        cache.get("all", this::load);
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void servesWithoutStoringWhenFull() {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMinutes(1), 2);
+        cache.get("id:1", this::load);
+        cache.get("id:2", this::load);
+
+        assertThat(cache.get("id:3", this::load).body()).isNotEmpty();
+        cache.get("id:3", this::load);
+        cache.get("id:1", this::load);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void usesPersonEtagForSingleUser() {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMinutes(1), 100);
+        Person person = new Person();
+        person.setId(1L);
+        person.setEmail("user@mail.com");
+
+        assertThat(cache.get("id:1", () -> person).etag()).isEqualTo(ETags.of(person));
+    }
+
+    @Test
+    void keepsUserServiceEtagOfLoadedEntity() {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMinutes(1), 100);
+        Person person = new Person();
+        person.setId(1L);
+
+        SerializedResponseCache.Cached cached = cache.get("id:1", () -> ResponseEntity.ok().eTag("\"v7\"").body(person));
+
+        assertThat(cached.etag()).isEqualTo("\"v7\"");
+        assertThat(new String(cached.body(), StandardCharsets.UTF_8)).startsWith("{\"id\":1");
+    }
+
+    @Test
+    void loadsOnceForConcurrentMisses() throws Exception {
+        SerializedResponseCache cache = new SerializedResponseCache(new ObjectMapper(), Duration.ofMinutes(1), 100);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SerializedResponseCache.Cached>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get("all", () -> {
+                    awaitQuietly(release);
+                    return load();
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<SerializedResponseCache.Cached> result : results) {
+                assertThat(result.get().body()).isNotEmpty();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    private List<String> load() {
+        loads.incrementAndGet();
+        return List.of("a", "b");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.auth_service.stub;
+
+import com.example.auth_service.api.Person;
+import com.example.auth_service.config.Role;
+import com.example.auth_service.service.ETags;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Локальная заглушка микросервиса UserService для тестов.
+ * Поддерживает те же пути, что вызывает {@link com.example.auth_service.service.PersonService},
+ * и считает количество запросов по каждому из них.
+ */
+public class StubUserService implements AutoCloseable {
+
+    private static final String SMILE = "application/x-jackson-smile";
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ObjectMapper smileMapper = new SmileMapper()
+            .registerModule(new JavaTimeModule());
+    private final Map<Long, Person> users = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean patchSupported;
+    private volatile boolean failing;
+    private volatile boolean smileSupported;
+    private volatile int slowEvery;
+    private volatile long slowMillis;
+    private volatile long latencyMicros;
+    private volatile long jitterMicros;
+    private volatile double errorRate;
+    private final AtomicLong handled = new AtomicLong();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+    private final String basePath;
+
+    public StubUserService() throws IOException {
+        this("");
+    }
+
+    /**
+     * @param basePath - путь, под которым заглушка отвечает, например {@code /users}.
+     */
+    public StubUserService(String basePath) throws IOException {
+        this.basePath = basePath;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + basePath + "/";
+    }
+
+    public Person addUser(String email, String password, Role role) {
+        Person person = new Person();
+        person.setId(sequence.incrementAndGet());
+        person.setEmail(email);
+        person.setPassword(password);
+        person.setFirstName("First" + person.getId());
+        person.setLastName("Last" + person.getId());
+        person.setBirthday(LocalDate.of(1990, 1, 1));
+        person.setRole(role);
+        users.put(person.getId(), person);
+        return person;
+    }
+
+    /**
+     * Заполняет заглушку пользователями {@code user<i>@load.test} с одинаковым паролем.
+     *
+     * @return добавленные пользователи в порядке добавления.
+     */
+    public List<Person> addUsers(int count, String password, Role role) {
+        List<Person> added = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            added.add(addUser("user" + i + "@load.test", password, role));
+        }
+        return added;
+    }
+
+    public void removeUser(long id) {
+        users.remove(id);
+    }
+
+    public Person getUser(long id) {
+        return users.get(id);
+    }
+
+    /**
+     * Включает поддержку частичного обновления {@code PATCH /api/{id}} с проверкой If-Match по ETag заглушки.
+     */
+    public void setPatchSupported(boolean patchSupported) {
+        this.patchSupported = patchSupported;
+    }
+
+    /**
+     * Заставляет заглушку отвечать 503 на любой запрос, имитируя сбойную реплику.
+     */
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * Включает ответы и прием тел в формате Smile. Без нее тело в Smile отклоняется с 415.
+     * Запросы и ответы в Smile считаются по ключам {@code "SMILE request"} и {@code "SMILE response"}.
+     */
+    public void setSmileSupported(boolean smileSupported) {
+        this.smileSupported = smileSupported;
+    }
+
+    /**
+     * Задерживает каждый {@code every}-й запрос на {@code delay}, имитируя хвост задержек.
+     * Значение 0 отключает задержку.
+     */
+    public void setSlowRequests(int every, Duration delay) {
+        this.slowMillis = delay.toMillis();
+        this.slowEvery = every;
+    }
+
+    /**
+     * Задерживает каждый запрос на {@code latency} плюс случайную добавку до {@code jitter}.
+     */
+    public void setLatency(Duration latency, Duration jitter) {
+        this.latencyMicros = latency.toNanos() / 1000;
+        this.jitterMicros = jitter.toNanos() / 1000;
+    }
+
+    /**
+     * Отвечает 503 на случайную долю {@code errorRate} запросов. Такие ответы считаются по ключу {@code "FAILED"}.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param key - метод и шаблон пути, например {@code "GET /api/email"}.
+     * @return количество запросов, пришедших на этот путь.
+     */
+    public int requestCount(String key) {
+        AtomicInteger counter = requests.get(key);
+        return counter == null ? 0 : counter.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String rawPath = exchange.getRequestURI().getRawPath();
+            if (!rawPath.startsWith(basePath + "/")) {
+                send(exchange, 404, null);
+                return;
+            }
+            String[] path = rawPath.substring(basePath.length()).replaceAll("^/+|/+$", "").split("/");
+            if (path.length < 1 || !"api".equals(path[0])) {
+                send(exchange, 404, null);
+                return;
+            }
+            if (slowEvery > 0 && handled.incrementAndGet() % slowEvery == 0) {
+                sleep(slowMillis);
+            }
+            if (latencyMicros > 0 || jitterMicros > 0) {
+                sleepMicros(latencyMicros + (jitterMicros > 0 ? ThreadLocalRandom.current().nextLong(jitterMicros) : 0));
+            }
+            if (failing || errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                count("FAILED");
+                send(exchange, 503, null);
+                return;
+            }
+            if (isSmile(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                if (!smileSupported) {
+                    send(exchange, 415, null);
+                    return;
+                }
+                count("SMILE request");
+            }
+            if ("GET".equals(method) && path.length == 2 && "all".equals(path[1])) {
+                count("GET /api/all");
+                send(exchange, 200, new ArrayList<>(users.values()));
+            } else if ("GET".equals(method) && path.length == 3 && "email".equals(path[1])) {
+                count("GET /api/email");
+                String email = URLDecoder.decode(path[2], StandardCharsets.UTF_8);
+                Person person = users.values().stream()
+                        .filter(user -> user.getEmail().equals(email))
+                        .findFirst()
+                        .orElse(null);
+                send(exchange, person == null ? 404 : 200, person);
+            } else if ("GET".equals(method) && path.length == 2) {
+                count("GET /api/id");
+                Person person = users.get(Long.parseLong(path[1]));
+                if (person != null) {
+                    exchange.getResponseHeaders().set("ETag", etag(person));
+                }
+                send(exchange, person == null ? 404 : 200, person);
+            } else if ("POST".equals(method) && path.length == 1) {
+                count("POST /api");
+                Person person = readPerson(exchange);
+                person.setId(sequence.incrementAndGet());
+                users.put(person.getId(), person);
+                send(exchange, 200, person);
+            } else if ("PUT".equals(method) && path.length == 1) {
+                count("PUT /api");
+                Person person = readPerson(exchange);
+                Person current = users.get(person.getId());
+                String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+                if (current != null && ifMatch != null && !ETags.matches(ifMatch, etag(current))) {
+                    send(exchange, 412, null);
+                    return;
+                }
+                boolean exists = current != null && users.replace(person.getId(), current, person);
+                if (exists) {
+                    exchange.getResponseHeaders().set("ETag", etag(person));
+                }
+                send(exchange, exists ? 200 : 404, exists ? person : null);
+            } else if ("PUT".equals(method) && path.length == 4 && "change".equals(path[2])) {
+                count("PUT /api/role");
+                Person person = users.get(Long.parseLong(path[1]));
+                if (person != null) {
+                    person.setRole(Role.valueOf(path[3]));
+                }
+                send(exchange, person == null ? 404 : 200, person);
+            } else if ("PATCH".equals(method) && path.length == 2) {
+                count("PATCH /api/id");
+                patch(exchange, Long.parseLong(path[1]));
+            } else if ("DELETE".equals(method) && path.length == 2) {
+                count("DELETE /api/id");
+                boolean removed = users.remove(Long.parseLong(path[1])) != null;
+                send(exchange, removed ? 200 : 404, removed ? "User deleted" : null);
+            } else {
+                send(exchange, 404, null);
+            }
+        }
+    }
+
+    private void patch(HttpExchange exchange, long id) throws IOException {
+        if (!patchSupported) {
+            send(exchange, 405, null);
+            return;
+        }
+        Person current = users.get(id);
+        if (current == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null && !ETags.matches(ifMatch, etag(current))) {
+            send(exchange, 412, null);
+            return;
+        }
+        Person changes = readPerson(exchange);
+        Person updated = mapper.convertValue(current, Person.class);
+        if (changes.getEmail() != null) {
+            updated.setEmail(changes.getEmail());
+        }
+        if (changes.getPassword() != null) {
+            updated.setPassword(changes.getPassword());
+        }
+        if (changes.getFirstName() != null) {
+            updated.setFirstName(changes.getFirstName());
+        }
+        if (changes.getLastName() != null) {
+            updated.setLastName(changes.getLastName());
+        }
+        if (changes.getBirthday() != null) {
+            updated.setBirthday(changes.getBirthday());
+        }
+        users.put(id, updated);
+        exchange.getResponseHeaders().set("ETag", etag(updated));
+        send(exchange, 200, updated);
+    }
+
+    /**
+     * @return ETag текущей версии пользователя, который заглушка отдает при чтении.
+     */
+    public String etag(long id) {
+        return etag(users.get(id));
+    }
+
+    /**
+     * Собственная схема версий заглушки, отличная от {@link ETags}, как у настоящего UserService.
+     */
+    private static String etag(Person person) {
+        return "\"stub-" + Integer.toHexString(person.hashCode()) + "\"";
+    }
+
+    private Person readPerson(HttpExchange exchange) throws IOException {
+        boolean smile = isSmile(exchange.getRequestHeaders().getFirst("Content-Type"));
+        return (smile ? smileMapper : mapper).readValue(exchange.getRequestBody(), Person.class);
+    }
+
+    private static boolean isSmile(String header) {
+        return header != null && header.contains(SMILE);
+    }
+
+    private void count(String key) {
+        requests.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        boolean smile = !(body instanceof String) && smileSupported
+                && isSmile(exchange.getRequestHeaders().getFirst("Accept"));
+        byte[] bytes = body instanceof String text
+                ? text.getBytes(StandardCharsets.UTF_8)
+                : (smile ? smileMapper : mapper).writeValueAsBytes(body);
+        if (smile) {
+            count("SMILE response");
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                body instanceof String ? "text/plain;charset=UTF-8" : smile ? SMILE : "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleepMicros(long micros) {
+        LockSupport.parkNanos(micros * 1000);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}